@@ -8,6 +8,7 @@
   :repositories {"conjars" "http://conjars.org/repo/"}
   :dependencies [[com.esotericsoftware.reflectasm/reflectasm "1.02"]
                  [org.objenesis/objenesis "1.2"]
+                 [org.ow2.asm/asm "4.0"]
                  [com.googlecode/minlog "1.2"]]
   :dev-dependencies [[junit "4.8.2"]
                      [lein-javac "1.3.0"]
@@ -13,6 +13,7 @@ import java.util.Collections;
 import java.util.Currency;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.objenesis.instantiator.ObjectInstantiator;
 import org.objenesis.strategy.InstantiatorStrategy;
@@ -22,12 +23,16 @@ import org.objenesis.strategy.StdInstantiatorStrategy;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.serializers.ArraySerializer;
+import com.esotericsoftware.kryo.serializers.BeanSerializer;
 import com.esotericsoftware.kryo.serializers.CollectionSerializer;
+import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.BigDecimalSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.BigIntegerSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.BooleanArraySerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.BooleanSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.ByteArraySerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.ByteSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.CharArraySerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.CharSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.ClassSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.CollectionsEmptyListSerializer;
@@ -38,12 +43,17 @@ import com.esotericsoftware.kryo.serializers.DefaultSerializers.CollectionsSingl
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.CollectionsSingletonSetSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.CurrencySerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.DateSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.DoubleArraySerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.DoubleSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.EnumSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.FloatArraySerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.FloatSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.IntArraySerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.IntSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.KryoSerializableSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.LongArraySerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.LongSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.ShortArraySerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.ShortSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.StringBufferSerializer;
 import com.esotericsoftware.kryo.serializers.DefaultSerializers.StringBuilderSerializer;
@@ -52,6 +62,7 @@ import com.esotericsoftware.kryo.serializers.FieldSerializer;
 import com.esotericsoftware.kryo.serializers.MapSerializer;
 import com.esotericsoftware.kryo.util.IdentityObjectIntMap;
 import com.esotericsoftware.kryo.util.IntMap;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
 import com.esotericsoftware.kryo.util.ObjectMap;
 
 import static com.esotericsoftware.kryo.Util.*;
@@ -64,15 +75,35 @@ public class Kryo {
 	static public final byte NULL = 0;
 	static public final byte NOT_NULL = 1;
 
+	static private final int NO_REFERENCE = -1;
+	static private final int REFERENCE = -2;
+	/** The largest ID stored in the dense registration array. */
+	static private final int MAX_DENSE_ID = 4096;
+	/** The number of entries the class name tables may retain between object graphs. */
+	static private final int MAXIMUM_CAPACITY = 2048;
+	/** The maximum number of strings and the maximum string length stored in the session string dictionary. */
+	static final int MAX_SESSION_STRINGS = 4096, MAX_SESSION_STRING_LENGTH = 256;
+
 	private Class<? extends Serializer> defaultSerializer = FieldSerializer.class;
 	private final ArrayList<DefaultSerializerEntry> defaultSerializers = new ArrayList(32);
 	private int lowPriorityDefaultSerializerCount;
+	/** The default serializer entry resolved for each type. Kryo instances using this Kryo as their registry share it until they
+	 * change their default serializers, so a type is only resolved once for all of them. */
+	private ConcurrentHashMap<Class, DefaultSerializerEntry> typeToDefaultSerializer = new ConcurrentHashMap();
 	private ArraySerializer arraySerializer = new ArraySerializer();
 	private InstantiatorStrategy strategy;
 
 	private int depth, nextRegisterID;
 	private final IntMap<Registration> idToRegistration = new IntMap();
+	/** Registrations with small IDs, indexed by ID. Registrations with larger IDs are only in idToRegistration. */
+	private Registration[] denseIdToRegistration = new Registration[32];
 	private final ObjectMap<Class, Registration> classToRegistration = new ObjectMap();
+	/** Registrations not found in this Kryo are looked up in the registry, or null. */
+	private final Kryo registry;
+	/** True if this Kryo is the registry for other Kryo instances, so its registrations cannot be changed. */
+	private boolean frozen;
+	/** Instantiators for types whose registration is shared from the registry, or null. */
+	private ObjectMap<Class, ObjectInstantiator> registryInstantiators;
 	private Class memoizedType;
 	private Registration memoizedRegistration;
 	private ObjectMap context, graphContext;
@@ -81,16 +112,28 @@ public class Kryo {
 	private final IdentityObjectIntMap<Class> classToNameId = new IdentityObjectIntMap();
 	private final IntMap<Class> nameIdToClass = new IntMap();
 	private int nextNameId;
+	private boolean session, sessionStrings;
+	private final ObjectMap<String, Integer> stringToSessionId = new ObjectMap();
+	private final ArrayList<String> sessionIdToString = new ArrayList();
+	/** Caches class name lookups for the current classloader. Failed lookups are stored as the ClassNotFoundException. */
+	private final ObjectMap<String, Object> nameToClass = new ObjectMap();
 	private ClassLoader classLoader = getClass().getClassLoader();
 
 	private boolean references = true;
-	private final InstanceId instanceId = new InstanceId(null, 0);
-	private final IdentityObjectIntMap<Class> classToNextInstanceId = new IdentityObjectIntMap();
-	private final IdentityObjectIntMap objectToInstanceId = new IdentityObjectIntMap();
-	private final ObjectMap<InstanceId, Object> instanceIdToObject = new ObjectMap();
+	private ReferenceResolver referenceResolver = new MapReferenceResolver();
+	private Object readReferenceObject;
 
 	public Kryo () {
+		registry = null;
+
 		addDefaultSerializer(byte[].class, ByteArraySerializer.class);
+		addDefaultSerializer(char[].class, CharArraySerializer.class);
+		addDefaultSerializer(short[].class, ShortArraySerializer.class);
+		addDefaultSerializer(int[].class, IntArraySerializer.class);
+		addDefaultSerializer(long[].class, LongArraySerializer.class);
+		addDefaultSerializer(float[].class, FloatArraySerializer.class);
+		addDefaultSerializer(double[].class, DoubleArraySerializer.class);
+		addDefaultSerializer(boolean[].class, BooleanArraySerializer.class);
 		addDefaultSerializer(BigInteger.class, BigIntegerSerializer.class);
 		addDefaultSerializer(BigDecimal.class, BigDecimalSerializer.class);
 		addDefaultSerializer(Class.class, ClassSerializer.class);
@@ -122,13 +165,46 @@ public class Kryo {
 		register(String.class, new StringSerializer());
 	}
 
+	/** Creates a Kryo that uses the registrations of the specified Kryo without copying them, so creating it is very cheap. The
+	 * serializers of the registry, including any field metadata they have cached, are shared. The default serializers,
+	 * instantiator strategy, classloader, and the registration required and references settings are copied from the registry.
+	 * <p>
+	 * Classes registered with the new Kryo, including classes registered automatically, are only stored in the new Kryo. After
+	 * this constructor is called, the registry is frozen and its registrations and default serializers can no longer be changed.
+	 * The registry may be shared by many Kryo instances on different threads, so its serializers and registrations must not be
+	 * modified and its serializers must be safe for concurrent use. {@link FieldSerializer}, {@link CompatibleFieldSerializer}
+	 * and {@link BeanSerializer} look up the serializers for fields using the Kryo doing the serialization, so a class registered
+	 * with the new Kryo is serialized with the serializer registered there, even inside an object whose serializer came from the
+	 * registry. */
+	public Kryo (Kryo registry) {
+		if (registry == null) throw new IllegalArgumentException("registry cannot be null.");
+		if (!registry.frozen) {
+			registry.frozen = true;
+			for (Registration registration : new ObjectMap.Values<Registration>(registry.classToRegistration))
+				registration.frozen = true;
+		}
+		this.registry = registry;
+		defaultSerializer = registry.defaultSerializer;
+		defaultSerializers.addAll(registry.defaultSerializers);
+		lowPriorityDefaultSerializerCount = registry.lowPriorityDefaultSerializerCount;
+		arraySerializer = registry.arraySerializer;
+		typeToDefaultSerializer = registry.typeToDefaultSerializer;
+		strategy = registry.strategy;
+		classLoader = registry.classLoader;
+		registrationRequired = registry.registrationRequired;
+		references = registry.references;
+		nextRegisterID = registry.nextRegisterID;
+	}
+
 	// --- Default serializers ---
 
 	/** Sets the serailzer to use when no {@link #addDefaultSerializer(Class, Class) default serializers} match an object's type.
 	 * Default is {@link FieldSerializer}. */
 	public void setDefaultSerializer (Class<Serializer> serializer) {
 		if (serializer == null) throw new IllegalArgumentException("serializer cannot be null.");
+		checkNotFrozen();
 		defaultSerializer = serializer;
+		defaultSerializersChanged();
 	}
 
 	/** Instances of the specified class will use the specified serializer.
@@ -136,10 +212,12 @@ public class Kryo {
 	public void addDefaultSerializer (Class type, Serializer serializer) {
 		if (type == null) throw new IllegalArgumentException("type cannot be null.");
 		if (serializer == null) throw new IllegalArgumentException("serializer cannot be null.");
+		checkNotFrozen();
 		DefaultSerializerEntry entry = new DefaultSerializerEntry();
 		entry.type = type;
 		entry.serializer = serializer;
 		defaultSerializers.add(defaultSerializers.size() - lowPriorityDefaultSerializerCount, entry);
+		defaultSerializersChanged();
 	}
 
 	/** Instances of the specified class will use the specified serializer. Serializer instances are created as needed via
@@ -200,10 +278,20 @@ public class Kryo {
 	public void addDefaultSerializer (Class type, Class<? extends Serializer> serializerClass) {
 		if (type == null) throw new IllegalArgumentException("type cannot be null.");
 		if (serializerClass == null) throw new IllegalArgumentException("serializerClass cannot be null.");
+		checkNotFrozen();
 		DefaultSerializerEntry entry = new DefaultSerializerEntry();
 		entry.type = type;
 		entry.serializerClass = serializerClass;
 		defaultSerializers.add(defaultSerializers.size() - lowPriorityDefaultSerializerCount, entry);
+		defaultSerializersChanged();
+	}
+
+	/** Discards the cached default serializer entries. A cache shared with the registry is replaced rather than cleared. */
+	private void defaultSerializersChanged () {
+		if (registry != null && typeToDefaultSerializer == registry.typeToDefaultSerializer)
+			typeToDefaultSerializer = new ConcurrentHashMap();
+		else
+			typeToDefaultSerializer.clear();
 	}
 
 	/** Returns the best matching serializer for a class. This method can be overridden to implement custom logic to choose a
@@ -211,20 +299,37 @@ public class Kryo {
 	public Serializer getDefaultSerializer (Class type) {
 		if (type == null) throw new IllegalArgumentException("type cannot be null.");
 
-		if (type.isAnnotationPresent(DefaultSerializer.class))
-			return newSerializer(((DefaultSerializer)type.getAnnotation(DefaultSerializer.class)).value(), type);
+		DefaultSerializerEntry entry = typeToDefaultSerializer.get(type);
+		if (entry == null) {
+			entry = resolveDefaultSerializer(type);
+			typeToDefaultSerializer.put(type, entry);
+		}
+		if (entry.serializer != null) return entry.serializer;
+		return newSerializer(entry.serializerClass, type);
+	}
+
+	/** Returns the entry that supplies the default serializer for the specified class. The result only depends on the class and the
+	 * default serializers configured, so it is cached by {@link #getDefaultSerializer(Class)}. */
+	private DefaultSerializerEntry resolveDefaultSerializer (Class type) {
+		if (type.isAnnotationPresent(DefaultSerializer.class)) {
+			DefaultSerializerEntry entry = new DefaultSerializerEntry();
+			entry.type = type;
+			entry.serializerClass = ((DefaultSerializer)type.getAnnotation(DefaultSerializer.class)).value();
+			return entry;
+		}
 
 		for (int i = 0, n = defaultSerializers.size(); i < n; i++) {
 			DefaultSerializerEntry entry = defaultSerializers.get(i);
-			if (entry.type.isAssignableFrom(type)) {
-				if (entry.serializer != null) return entry.serializer;
-				return newSerializer(entry.serializerClass, type);
-			}
+			if (entry.type.isAssignableFrom(type)) return entry;
 		}
 
-		if (type.isArray()) return arraySerializer;
-
-		return newSerializer(defaultSerializer, type);
+		DefaultSerializerEntry entry = new DefaultSerializerEntry();
+		entry.type = type;
+		if (type.isArray())
+			entry.serializer = arraySerializer;
+		else
+			entry.serializerClass = defaultSerializer;
+		return entry;
 	}
 
 	/** Creates a new instance of the specified serializer for serializing the specified class. Serializers */
@@ -277,17 +382,23 @@ public class Kryo {
 	public Registration register (Class type, Serializer serializer) {
 		Registration registration = classToRegistration.get(type);
 		if (registration != null) {
+			checkNotFrozen();
 			registration.setSerializer(serializer);
 			return registration;
 		}
+		// A registration shared from the registry is not modified, it is replaced using the same ID.
+		if (registry != null) {
+			registration = registry.findRegistration(type);
+			if (registration != null) return registerInternal(newRegistration(type, serializer, registration.getId()));
+		}
 		int id;
 		while (true) {
 			id = nextRegisterID++;
 			// Disallow -1 and -2, which are used for NAME and NULL (stored as id + 2 == 1 and 0).
 			if (nextRegisterID == -2) nextRegisterID = 0;
-			if (!idToRegistration.containsKey(id)) break;
+			if (getRegistration(id) == null) break;
 		}
-		return registerInternal(new Registration(type, serializer, id));
+		return registerInternal(newRegistration(type, serializer, id));
 	}
 
 	/** Registers the class using the specified ID. If the ID is already in use by the same type, the old entry is overwritten. If
@@ -297,7 +408,7 @@ public class Kryo {
 	 * @param id Must not be -1 or -2. */
 	public Registration register (Class type, Serializer serializer, int id) {
 		if (id == -1 || id == -2) throw new IllegalArgumentException("id cannot be -1 or -2");
-		return register(new Registration(type, serializer, id));
+		return register(newRegistration(type, serializer, id));
 	}
 
 	/** Stores the specified registration. This can be used to efficiently store per type information needed for serialization,
@@ -311,7 +422,7 @@ public class Kryo {
 		int id = registration.getId();
 		if (id == -1 || id == -2) throw new IllegalArgumentException("id cannot be -1 or -2");
 
-		Registration existing = getRegistration(registration.getType());
+		Registration existing = getRegistration(id);
 		if (existing != null && existing.getType() != registration.getType()) {
 			throw new KryoException("An existing registration with a different type already uses ID: " + registration.getId()
 				+ "\nExisting registration: " + existing + "\nUnable to set registration: " + registration);
@@ -321,7 +432,16 @@ public class Kryo {
 		return registration;
 	}
 
+	/** Creates a registration, disabling {@link Registration#setReferences(boolean) references} for the built-in immutable
+	 * types. */
+	private Registration newRegistration (Class type, Serializer serializer, int id) {
+		Registration registration = new Registration(type, serializer, id);
+		if (isImmutable(type)) registration.setReferences(false);
+		return registration;
+	}
+
 	private Registration registerInternal (Registration registration) {
+		checkNotFrozen();
 		if (TRACE) {
 			if (registration.getId() == NAME) {
 				trace("kryo", "Register class name: " + className(registration.getType()) + " ("
@@ -332,7 +452,19 @@ public class Kryo {
 			}
 		}
 		classToRegistration.put(registration.getType(), registration);
-		idToRegistration.put(registration.getId(), registration);
+		memoizedType = null;
+		memoizedRegistration = null;
+		int id = registration.getId();
+		idToRegistration.put(id, registration);
+		if (id >= 0 && id <= MAX_DENSE_ID) {
+			if (id >= denseIdToRegistration.length) {
+				int newLength = Math.min(Math.max(id + 1, denseIdToRegistration.length * 2), MAX_DENSE_ID + 1);
+				Registration[] newArray = new Registration[newLength];
+				System.arraycopy(denseIdToRegistration, 0, newArray, 0, denseIdToRegistration.length);
+				denseIdToRegistration = newArray;
+			}
+			denseIdToRegistration[id] = registration;
+		}
 		if (registration.getType().isPrimitive()) classToRegistration.put(getWrapperClass(registration.getType()), registration);
 		return registration;
 	}
@@ -344,7 +476,7 @@ public class Kryo {
 		if (type == null) throw new IllegalArgumentException("type cannot be null.");
 
 		if (type == memoizedType) return memoizedRegistration;
-		Registration registration = classToRegistration.get(type);
+		Registration registration = findRegistration(type);
 		if (registration == null) {
 			if (Proxy.isProxyClass(type)) {
 				// If a Proxy class, treat it like an InvocationHandler because the concrete class for a proxy is generated.
@@ -356,16 +488,34 @@ public class Kryo {
 				throw new IllegalArgumentException("Class is not registered: " + className(type)
 					+ "\nNote: To register this class use: kryo.register(" + className(type) + ".class);");
 			} else
-				registration = registerInternal(new Registration(type, getDefaultSerializer(type), NAME));
+				registration = registerInternal(newRegistration(type, getDefaultSerializer(type), NAME));
 		}
 		memoizedType = type;
 		memoizedRegistration = registration;
 		return registration;
 	}
 
+	/** Returns the registration for the specified class from this Kryo or its registry, or null. */
+	private Registration findRegistration (Class type) {
+		Registration registration = classToRegistration.get(type);
+		if (registration == null && registry != null) registration = registry.findRegistration(type);
+		return registration;
+	}
+
 	/** Returns the registration for the specified ID, or null if no class is registered with that ID. */
 	public Registration getRegistration (int classID) {
-		return idToRegistration.get(classID);
+		Registration registration;
+		Registration[] denseIdToRegistration = this.denseIdToRegistration;
+		if (classID >= 0 && classID < denseIdToRegistration.length)
+			registration = denseIdToRegistration[classID];
+		else
+			registration = idToRegistration.get(classID);
+		if (registration == null && registry != null) registration = registry.getRegistration(classID);
+		return registration;
+	}
+
+	private void checkNotFrozen () {
+		if (frozen) throw new KryoException("This Kryo is the registry for other Kryo instances and cannot be modified.");
 	}
 
 	/** Returns the serializer for the registration for the specified class.
@@ -397,11 +547,11 @@ public class Kryo {
 					output.writeInt(nameId, true);
 					return registration;
 				}
-				// Only write the class name the first time encountered in object graph.
+				// Only write the class name the first time encountered in object graph or session.
 				if (TRACE) trace("kryo", "Write class name: " + className(type));
 				nameId = nextNameId++;
 				classToNameId.put(type, nameId);
-				output.write(nameId);
+				output.writeInt(nameId, true);
 				output.writeString(type.getName());
 			} else {
 				if (TRACE) trace("kryo", "Write class " + registration.getId() + ": " + className(type));
@@ -521,17 +671,16 @@ public class Kryo {
 			if (mayBeNull) output.writeByte(Kryo.NOT_NULL);
 			return false;
 		}
-		int instanceId = objectToInstanceId.get(object, -1);
-		if (instanceId != -1) {
-			if (DEBUG) debug("kryo", "Write object reference " + instanceId + ": " + string(object));
-			output.writeInt(instanceId, true);
+		int id = referenceResolver.getWrittenId(object);
+		if (id != -1) {
+			if (DEBUG) debug("kryo", "Write object reference " + id + ": " + string(object));
+			output.writeInt(id, true);
 			return true;
 		}
 		// Only write the object the first time encountered in object graph.
-		instanceId = classToNextInstanceId.getAndIncrement(type, 1, 1);
-		if (TRACE) trace("kryo", "Write initial object reference " + instanceId + ": " + string(object));
-		objectToInstanceId.put(object, instanceId);
-		output.writeInt(instanceId, true);
+		id = referenceResolver.addWrittenObject(object);
+		if (TRACE) trace("kryo", "Write initial object reference " + id + ": " + string(object));
+		output.writeInt(id, true);
 		return false;
 	}
 
@@ -549,13 +698,9 @@ public class Kryo {
 				int nameId = input.readInt(true);
 				Class type = nameIdToClass.get(nameId);
 				if (type == null) {
-					// Only read the class name the first time encountered in object graph.
+					// Only read the class name the first time encountered in object graph or session.
 					String className = input.readString();
-					try {
-						type = Class.forName(className, false, classLoader);
-					} catch (ClassNotFoundException ex) {
-						throw new KryoException("Unable to find class: " + className, ex);
-					}
+					type = forName(className);
 					nameIdToClass.put(nameId, type);
 					if (TRACE) trace("kryo", "Read class name: " + className);
 				} else {
@@ -563,7 +708,7 @@ public class Kryo {
 				}
 				return getRegistration(type);
 			}
-			Registration registration = idToRegistration.get(classID - 2);
+			Registration registration = getRegistration(classID - 2);
 			if (registration == null) throw new KryoException("Encountered unregistered class ID: " + (classID - 2));
 			if (TRACE) trace("kryo", "Read class " + (classID - 2) + ": " + className(registration.getType()));
 			return registration;
@@ -572,21 +717,42 @@ public class Kryo {
 		}
 	}
 
+	/** Returns the class with the specified name from the {@link #setClassLoader(ClassLoader) classloader}. Lookups, including
+	 * failed lookups, are cached across object graphs until the classloader is changed, so {@link Class#forName(String)} is
+	 * normally only called the first time a class name is encountered. The cache is simply emptied when it reaches
+	 * {@link #MAXIMUM_CAPACITY} entries, which only costs repeating lookups for applications that encounter more class names than
+	 * that. */
+	private Class forName (String className) {
+		Object entry = nameToClass.get(className);
+		if (entry == null) {
+			try {
+				entry = Class.forName(className, false, classLoader);
+			} catch (ClassNotFoundException ex) {
+				entry = ex;
+			}
+			if (nameToClass.size >= MAXIMUM_CAPACITY) nameToClass.clear();
+			nameToClass.put(className, entry);
+		}
+		if (entry instanceof ClassNotFoundException)
+			throw new KryoException("Unable to find class: " + className, (ClassNotFoundException)entry);
+		return (Class)entry;
+	}
+
 	/** Reads an object using the registered serializer. */
 	public <T> T readObject (Input input, Class<T> type) {
 		if (input == null) throw new IllegalArgumentException("input cannot be null.");
 		if (type == null) throw new IllegalArgumentException("type cannot be null.");
 		depth++;
 		try {
-			InstanceId instanceId = null;
+			int id = NO_REFERENCE;
 			if (references) {
-				instanceId = readReferenceOrNull(input, type, false);
-				if (instanceId == this.instanceId) return (T)instanceId.object;
+				id = readReferenceOrNull(input, type, false);
+				if (id == REFERENCE) return (T)readReferenceObject;
 			}
 
 			Serializer serializer = getRegistration(type).getSerializer();
 			T object = (T)serializer.create(this, input, type);
-			if (instanceId != null) instanceIdToObject.put(instanceId, object);
+			if (id != NO_REFERENCE) addReadObject(type, id, object);
 			serializer.read(this, input, object);
 			if (DEBUG) log("Read", object);
 			return object;
@@ -602,14 +768,14 @@ public class Kryo {
 		if (serializer == null) throw new IllegalArgumentException("serializer cannot be null.");
 		depth++;
 		try {
-			InstanceId instanceId = null;
+			int id = NO_REFERENCE;
 			if (references) {
-				instanceId = readReferenceOrNull(input, type, false);
-				if (instanceId == this.instanceId) return (T)instanceId.object;
+				id = readReferenceOrNull(input, type, false);
+				if (id == REFERENCE) return (T)readReferenceObject;
 			}
 
 			T object = (T)serializer.create(this, input, type);
-			if (instanceId != null) instanceIdToObject.put(instanceId, object);
+			if (id != NO_REFERENCE) addReadObject(type, id, object);
 			serializer.read(this, input, object);
 			if (DEBUG) log("Read", object);
 			return object;
@@ -627,10 +793,10 @@ public class Kryo {
 		try {
 			Serializer serializer = getRegistration(type).getSerializer();
 
-			InstanceId instanceId = null;
+			int id = NO_REFERENCE;
 			if (references) {
-				instanceId = readReferenceOrNull(input, type, true);
-				if (instanceId == this.instanceId) return (T)instanceId.object;
+				id = readReferenceOrNull(input, type, true);
+				if (id == REFERENCE) return (T)readReferenceObject;
 			} else if (!serializer.getAcceptsNull()) {
 				if (input.readByte() == NULL) {
 					if (DEBUG) log("Read", null);
@@ -639,7 +805,7 @@ public class Kryo {
 			}
 
 			T object = (T)serializer.create(this, input, type);
-			if (instanceId != null) instanceIdToObject.put(instanceId, object);
+			if (id != NO_REFERENCE) addReadObject(type, id, object);
 			serializer.read(this, input, object);
 			if (DEBUG) log("Read", object);
 			return object;
@@ -656,10 +822,10 @@ public class Kryo {
 		if (serializer == null) throw new IllegalArgumentException("serializer cannot be null.");
 		depth++;
 		try {
-			InstanceId instanceId = null;
+			int id = NO_REFERENCE;
 			if (references) {
-				instanceId = readReferenceOrNull(input, type, true);
-				if (instanceId == this.instanceId) return (T)instanceId.object;
+				id = readReferenceOrNull(input, type, true);
+				if (id == REFERENCE) return (T)readReferenceObject;
 			} else if (!serializer.getAcceptsNull()) {
 				if (input.readByte() == NULL) {
 					if (DEBUG) log("Read", null);
@@ -668,7 +834,7 @@ public class Kryo {
 			}
 
 			T object = (T)serializer.create(this, input, type);
-			if (instanceId != null) instanceIdToObject.put(instanceId, object);
+			if (id != NO_REFERENCE) addReadObject(type, id, object);
 			serializer.read(this, input, object);
 			if (DEBUG) log("Read", object);
 			return object;
@@ -687,15 +853,15 @@ public class Kryo {
 			if (registration == null) return null;
 			Class type = registration.getType();
 
-			InstanceId instanceId = null;
+			int id = NO_REFERENCE;
 			if (references) {
-				instanceId = readReferenceOrNull(input, type, false);
-				if (instanceId == this.instanceId) return instanceId.object;
+				id = readReferenceOrNull(input, type, false);
+				if (id == REFERENCE) return readReferenceObject;
 			}
 
 			Serializer serializer = registration.getSerializer();
 			Object object = serializer.create(this, input, type);
-			if (instanceId != null) instanceIdToObject.put(instanceId, object);
+			if (id != NO_REFERENCE) addReadObject(type, id, object);
 			serializer.read(this, input, object);
 			if (DEBUG) log("Read", object);
 			return object;
@@ -704,9 +870,10 @@ public class Kryo {
 		}
 	}
 
-	/** @return Null if references for the type is not supported. this.instanceId if the object field should be used. A new
-	 *         InstanceId if this is the first time the object appears in the graph. */
-	private InstanceId readReferenceOrNull (Input input, Class type, boolean mayBeNull) {
+	/** @return {@link #NO_REFERENCE} if references for the type are not supported. {@link #REFERENCE} if the object (or null)
+	 *         stored in readReferenceObject should be used. Otherwise the ID of an object that appears for the first time in the
+	 *         graph. */
+	private int readReferenceOrNull (Input input, Class type, boolean mayBeNull) {
 		if (type.isPrimitive()) type = getWrapperClass(type);
 		boolean referencesSupported = useReferences(type);
 		int id;
@@ -714,24 +881,27 @@ public class Kryo {
 			id = input.readInt(true);
 			if (id == NULL) {
 				if (DEBUG) log("Read", null);
-				instanceId.object = null;
-				return instanceId;
+				readReferenceObject = null;
+				return REFERENCE;
 			}
-			if (!referencesSupported) return null;
+			if (!referencesSupported) return NO_REFERENCE;
 		} else {
-			if (!referencesSupported) return null;
+			if (!referencesSupported) return NO_REFERENCE;
 			id = input.readInt(true);
 		}
-		instanceId.id = id;
-		instanceId.type = type;
-		Object object = instanceIdToObject.get(instanceId);
+		Object object = referenceResolver.getReadObject(type, id);
 		if (object != null) {
 			if (DEBUG) debug("kryo", "Read object reference " + id + ": " + string(object));
-			instanceId.object = object;
-			return instanceId;
+			readReferenceObject = object;
+			return REFERENCE;
 		}
 		if (TRACE) trace("kryo", "Read initial object reference " + id + ": " + className(type));
-		return new InstanceId(type, id);
+		return id;
+	}
+
+	private void addReadObject (Class type, int id, Object object) {
+		if (type.isPrimitive()) type = getWrapperClass(type);
+		referenceResolver.addReadObject(type, id, object);
 	}
 
 	/** Called when an object graph has been completely serialized or deserialized, allowing any state only needed per object graph
@@ -739,30 +909,128 @@ public class Kryo {
 	protected void reset () {
 		depth = 0;
 		if (graphContext != null) graphContext.clear();
-		if (!registrationRequired) {
-			classToNameId.clear();
-			nameIdToClass.clear();
+		if (!registrationRequired && !session) {
+			classToNameId.clear(MAXIMUM_CAPACITY);
+			nameIdToClass.clear(MAXIMUM_CAPACITY);
 			nextNameId = 0;
 		}
 		if (references) {
-			objectToInstanceId.clear();
-			instanceIdToObject.clear();
-			classToNextInstanceId.clear();
+			referenceResolver.reset();
+			readReferenceObject = null;
 		}
 		if (TRACE) trace("kryo", "Object graph complete.");
 	}
 
+	/** If true, the IDs assigned to unregistered class names are kept across object graphs, so each class name is only written once
+	 * per session instead of once per object graph. This is useful when many small object graphs are sent over a long-lived stream
+	 * without registering classes. The object graphs must be read in the same order they were written, and {@link #resetSession()}
+	 * must be called on both sides whenever the stream is restarted.
+	 * <p>
+	 * The session state is stored in the Kryo instance, not in the {@link Input} or {@link Output}, so each Kryo instance must only
+	 * be used with a single stream for the duration of a session. In particular, an instance with session mode enabled cannot be
+	 * shared through a {@link com.esotericsoftware.kryo.pool.KryoPool KryoPool} by code writing to or reading from different streams, as the IDs written to one stream
+	 * would be referenced in another. Changing this setting resets the session. Default is false.
+	 * @see #setSessionStrings(boolean) */
+	public void setSession (boolean session) {
+		this.session = session;
+		resetSession();
+		if (TRACE) trace("kryo", "Session: " + session);
+	}
+
+	public boolean getSession () {
+		return session;
+	}
+
+	/** If true and {@link #setSession(boolean) session mode} is enabled, strings written by the String serializer are stored in a
+	 * dictionary and repeated strings are written as an int id for the rest of the session. Only a limited number of short strings
+	 * are stored. Changing this setting resets the session. Default is false. */
+	public void setSessionStrings (boolean sessionStrings) {
+		this.sessionStrings = sessionStrings;
+		resetSession();
+		if (TRACE) trace("kryo", "Session strings: " + sessionStrings);
+	}
+
+	/** Returns true if {@link #setSession(boolean) session mode} and {@link #setSessionStrings(boolean) session strings} are
+	 * enabled. */
+	public boolean getSessionStrings () {
+		return session && sessionStrings;
+	}
+
+	/** Discards the class name IDs and strings stored for the current {@link #setSession(boolean) session}. This must be called on
+	 * both the writing and reading side at the same point in the stream. */
+	public void resetSession () {
+		classToNameId.clear(MAXIMUM_CAPACITY);
+		nameIdToClass.clear(MAXIMUM_CAPACITY);
+		nextNameId = 0;
+		stringToSessionId.clear(MAXIMUM_CAPACITY);
+		sessionIdToString.clear();
+		if (TRACE) trace("kryo", "Session reset.");
+	}
+
+	/** Writes a string, using the session string dictionary if {@link #getSessionStrings() session strings} are enabled.
+	 * @param value May be null.
+	 * @see #readSessionString(Input) */
+	public void writeSessionString (Output output, String value) {
+		if (!getSessionStrings()) {
+			output.writeString(value);
+			return;
+		}
+		if (value == null) {
+			output.writeByte(NULL);
+			return;
+		}
+		Integer id = stringToSessionId.get(value);
+		if (id != null) {
+			if (TRACE) trace("kryo", "Write session string reference " + id + ": " + value);
+			output.writeInt(id + 3, true);
+			return;
+		}
+		if (value.length() <= MAX_SESSION_STRING_LENGTH && stringToSessionId.size < MAX_SESSION_STRINGS) {
+			stringToSessionId.put(value, stringToSessionId.size);
+			output.writeByte(2); // Stored.
+		} else
+			output.writeByte(1); // Not stored.
+		output.writeString(value);
+	}
+
+	/** Reads a string written by {@link #writeSessionString(Output, String)}.
+	 * @return May be null. */
+	public String readSessionString (Input input) {
+		if (!getSessionStrings()) return input.readString();
+		int id = input.readInt(true);
+		switch (id) {
+		case NULL:
+			return null;
+		case 1:
+			return input.readString();
+		case 2:
+			// The writer never stores more or longer strings, so a stream asking to is corrupt or hostile.
+			if (sessionIdToString.size() >= MAX_SESSION_STRINGS)
+				throw new KryoException("Too many session strings, max: " + MAX_SESSION_STRINGS);
+			String value = input.readString();
+			if (value != null && value.length() > MAX_SESSION_STRING_LENGTH)
+				throw new KryoException("Session string too long, max: " + MAX_SESSION_STRING_LENGTH + ", length: " + value.length());
+			sessionIdToString.add(value);
+			return value;
+		}
+		id -= 3;
+		if (id < 0 || id >= sessionIdToString.size()) throw new KryoException("Encountered unknown session string ID: " + id);
+		return sessionIdToString.get(id);
+	}
+
 	/** Sets the classloader to resolve unregistered class names to classes. */
 	public void setClassLoader (ClassLoader classLoader) {
 		if (classLoader == null) throw new IllegalArgumentException("classLoader cannot be null.");
 		this.classLoader = classLoader;
+		nameToClass.clear(MAXIMUM_CAPACITY);
 	}
 
 	/** If true, an exception is thrown when an unregistered class is encountered. Default is false.
 	 * <p>
 	 * If false, when an unregistered class is encountered, its fully qualified class name will be serialized and the
 	 * {@link #addDefaultSerializer(Class, Class) default serializer} for the class used to serialize the object. Subsequent
-	 * appearances of the class within the same object graph are serialized as an int id.
+	 * appearances of the class within the same object graph, or the same {@link #setSession(boolean) session}, are serialized
+	 * as an int id.
 	 * <p>
 	 * Registered classes are serialized as an int id, avoiding the overhead of serializing the class name, but have the drawback
 	 * of needing to know the classes to be serialized up front. */
@@ -778,17 +1046,40 @@ public class Kryo {
 		if (TRACE) trace("kryo", "References: " + references);
 	}
 
+	public boolean getReferences () {
+		return references;
+	}
+
+	/** Sets the resolver used to track objects when references are enabled. Default is {@link MapReferenceResolver}. */
+	public void setReferenceResolver (ReferenceResolver referenceResolver) {
+		if (referenceResolver == null) throw new IllegalArgumentException("referenceResolver cannot be null.");
+		this.referenceResolver = referenceResolver;
+		if (TRACE) trace("kryo", "Reference resolver set: " + referenceResolver.getClass().getName());
+	}
+
+	public ReferenceResolver getReferenceResolver () {
+		return referenceResolver;
+	}
+
 	/** Returns true if references will be written for the specified type when references are enabled. The default implementation
-	 * returns false for Boolean, Byte, Character, and Short.
+	 * returns {@link Registration#getReferences()} for the type's registration, which is false for primitive wrappers, String,
+	 * enums, BigInteger, BigDecimal, Currency, and Date unless changed. If the type is not registered, eg when an object is
+	 * written with an explicit serializer, the default an automatic registration would have is used and the type is not
+	 * registered.
 	 * @param type Will never be a primitive type, but may be a primitive type wrapper. */
 	protected boolean useReferences (Class type) {
-		return type != Boolean.class && type != Byte.class && type != Character.class && type != Short.class;
+		if (type == memoizedType) return memoizedRegistration.getReferences();
+		Registration registration = findRegistration(type);
+		if (registration == null) return !isImmutable(type);
+		return registration.getReferences();
 	}
 
 	/** Sets the serializer to use for arrays. */
 	public void setArraySerializer (ArraySerializer arraySerializer) {
 		if (arraySerializer == null) throw new IllegalArgumentException("arraySerializer cannot be null.");
+		checkNotFrozen();
 		this.arraySerializer = arraySerializer;
+		defaultSerializersChanged();
 		if (TRACE) trace("kryo", "Array serializer set: " + arraySerializer.getClass().getName());
 	}
 
@@ -836,8 +1127,18 @@ public class Kryo {
 		Registration registration = getRegistration(type);
 		ObjectInstantiator instantiator = registration.getInstantiator();
 		if (instantiator == null) {
-			instantiator = newInstantiator(type);
-			registration.setInstantiator(instantiator);
+			if (registration.frozen) {
+				// A registration shared from the registry cannot be modified, so the instantiator is kept by this Kryo.
+				if (registryInstantiators == null) registryInstantiators = new ObjectMap();
+				instantiator = registryInstantiators.get(type);
+				if (instantiator == null) {
+					instantiator = newInstantiator(type);
+					registryInstantiators.put(type, instantiator);
+				}
+			} else {
+				instantiator = newInstantiator(type);
+				registration.setInstantiator(instantiator);
+			}
 		}
 		return (T)instantiator.newInstance();
 	}
@@ -869,29 +1170,6 @@ public class Kryo {
 		return Modifier.isFinal(type.getModifiers());
 	}
 
-	static final class InstanceId {
-		Class type;
-		int id;
-		Object object; // Set in readReferenceOrNull() for use as a return value.
-
-		public InstanceId (Class type, int id) {
-			this.type = type;
-			this.id = id;
-		}
-
-		public int hashCode () {
-			return 31 * (31 + id) + type.hashCode();
-		}
-
-		public boolean equals (Object obj) {
-			if (obj == null) return false;
-			InstanceId other = (InstanceId)obj;
-			if (id != other.id) return false;
-			if (type != other.type) return false;
-			return true;
-		}
-	}
-
 	static final class DefaultSerializerEntry {
 		Class type;
 		Serializer serializer;
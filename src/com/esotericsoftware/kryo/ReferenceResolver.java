@@ -0,0 +1,26 @@
+package com.esotericsoftware.kryo;
+
+/** When references are enabled, this tracks objects that have already been read or written, provides an ID for objects that are
+ * written, and looks up by ID objects that have been read. IDs are assigned per class, starting at 1, so the IDs for a class are
+ * small and dense.
+ * @see Kryo#setReferences(boolean)
+ * @see Kryo#setReferenceResolver(ReferenceResolver) */
+public interface ReferenceResolver {
+	/** Returns the ID for the object if it has been written previously in the current object graph, otherwise returns -1. */
+	public int getWrittenId (Object object);
+
+	/** Returns a new ID for an object that is being written for the first time in the current object graph. The ID is unique
+	 * among objects of the same class. */
+	public int addWrittenObject (Object object);
+
+	/** Returns the object read for the specified type and ID, or null if no such object has been read in the current object graph.
+	 * @param type Will never be a primitive type, but may be a primitive type wrapper. */
+	public Object getReadObject (Class type, int id);
+
+	/** Stores an object that has been read for the first time in the current object graph.
+	 * @param type Will never be a primitive type, but may be a primitive type wrapper. */
+	public void addReadObject (Class type, int id, Object object);
+
+	/** Called by {@link Kryo#reset()} when an object graph has been completely serialized or deserialized. */
+	public void reset ();
+}
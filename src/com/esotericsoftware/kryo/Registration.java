@@ -6,13 +6,16 @@ import org.objenesis.instantiator.ObjectInstantiator;
 import static com.esotericsoftware.kryo.Util.*;
 import static com.esotericsoftware.minlog.Log.*;
 
-/** Describes the {@link Serializer} and class ID to use for a class.
+/** Describes the {@link Serializer} and class ID to use for a class. The registrations of a Kryo that is the registry for other
+ * Kryo instances cannot be modified, see {@link Kryo#Kryo(Kryo)}.
  * @author Nathan Sweet <misc@n4te.com> */
 public class Registration {
 	private final Class type;
 	private final int id;
 	private Serializer serializer;
 	private ObjectInstantiator instantiator;
+	private boolean references = true;
+	boolean frozen;
 
 	public Registration (Class type, Serializer serializer, int id) {
 		if (type == null) throw new IllegalArgumentException("type cannot be null.");
@@ -38,6 +41,7 @@ public class Registration {
 
 	public void setSerializer (Serializer serializer) {
 		if (serializer == null) throw new IllegalArgumentException("serializer cannot be null.");
+		checkNotFrozen();
 		this.serializer = serializer;
 		if (TRACE) trace("kryo", "Update registered serializer: " + type.getName() + " (" + serializer.getClass().getName() + ")");
 	}
@@ -50,9 +54,32 @@ public class Registration {
 	/** Sets the instantiator that will create a new instance of the type in {@link Kryo#newInstance(Class)}. */
 	public void setInstantiator (ObjectInstantiator instantiator) {
 		if (instantiator == null) throw new IllegalArgumentException("instantiator cannot be null.");
+		checkNotFrozen();
 		this.instantiator = instantiator;
 	}
 
+	/** @see #setReferences(boolean) */
+	public boolean getReferences () {
+		return references;
+	}
+
+	/** If false, objects of this type are never tracked as references, even when {@link Kryo#setReferences(boolean) references}
+	 * are enabled. This saves the 1-5 byte reference ID written for each object and the cost of looking up the object, but means
+	 * the same object appearing more than once in a graph is serialized each time and deserialized as separate objects. This is
+	 * only safe for types that are immutable or whose identity does not matter. Default is true, except for the immutable types
+	 * registered automatically by Kryo.
+	 * @see Kryo#useReferences(Class) */
+	public void setReferences (boolean references) {
+		checkNotFrozen();
+		this.references = references;
+		if (TRACE) trace("kryo", "Update registered references: " + type.getName() + " (" + references + ")");
+	}
+
+	private void checkNotFrozen () {
+		if (frozen)
+			throw new KryoException("This registration belongs to the registry for other Kryo instances and cannot be modified.");
+	}
+
 	public String toString () {
 		return "[" + (id == Kryo.NAME ? "name" : id) + ", " + className(type) + "]";
 	}
@@ -1,6 +1,11 @@
 
 package com.esotericsoftware.kryo;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Currency;
+import java.util.Date;
+
 import com.esotericsoftware.kryo.serializers.ArraySerializer;
 
 import static com.esotericsoftware.minlog.Log.*;
@@ -35,6 +40,16 @@ public class Util {
 		return Double.class;
 	}
 
+	/** Returns true if the type is one of the built-in immutable types: a primitive or primitive wrapper, String, an enum,
+	 * BigInteger, BigDecimal, Currency, or Date. Though Date is mutable, it is treated as a value type. */
+	static boolean isImmutable (Class type) {
+		if (type.isPrimitive()) return true;
+		if (type == Boolean.class || type == Byte.class || type == Character.class || type == Short.class || type == Integer.class
+			|| type == Long.class || type == Float.class || type == Double.class || type == String.class) return true;
+		if (Enum.class.isAssignableFrom(type)) return true;
+		return type == BigInteger.class || type == BigDecimal.class || type == Currency.class || type == Date.class;
+	}
+
 	static void log (String message, Object object) {
 		if (object == null) {
 			if (TRACE) trace("kryo", message + ": null");
@@ -0,0 +1,126 @@
+
+package com.esotericsoftware.kryo.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/** An Input that reads ahead from an InputStream on another thread. While bytes are being deserialized, the next bytes are read
+ * into other buffers, so when more bytes are needed they are usually already available and only have to be copied rather than
+ * waiting for the stream.
+ * <p>
+ * An exception thrown by the InputStream is rethrown when the bytes that could not be read are needed. */
+public class AsyncInput extends Input {
+	private final BlockingQueue<Chunk> free, full;
+	private final InputStream inputStream;
+	private Chunk chunk;
+	private volatile Throwable error;
+	private volatile boolean closed;
+
+	/** Creates an AsyncInput that reads ahead into 2 buffers of the specified size, using a new daemon thread. */
+	public AsyncInput (InputStream inputStream, int bufferSize) {
+		this(inputStream, bufferSize, 2, null);
+	}
+
+	/** @param bufferCount The number of buffers that are read into ahead of being needed, at least 1.
+	 * @param executor Runs the reader task until the end of the stream is reached or this input is closed. If null, a new daemon
+	 *           thread is started. */
+	public AsyncInput (InputStream inputStream, int bufferSize, int bufferCount, Executor executor) {
+		super(inputStream, bufferSize);
+		if (bufferCount < 1) throw new IllegalArgumentException("bufferCount must be >= 1: " + bufferCount);
+		this.inputStream = inputStream;
+		free = new ArrayBlockingQueue(bufferCount + 1);
+		full = new ArrayBlockingQueue(bufferCount + 1);
+		for (int i = 0; i < bufferCount; i++)
+			free.add(new Chunk(new byte[bufferSize]));
+		Reader reader = new Reader();
+		if (executor != null)
+			executor.execute(reader);
+		else {
+			Thread thread = new Thread(reader, "AsyncInput");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/** @throws UnsupportedOperationException The InputStream of an AsyncInput cannot be changed. */
+	public void setInputStream (InputStream inputStream) {
+		throw new UnsupportedOperationException("The InputStream of an AsyncInput cannot be changed.");
+	}
+
+	/** Copies bytes that have been read ahead, waiting for the reader thread only if none are available yet. */
+	protected int fill (byte[] buffer, int offset, int count) throws KryoException {
+		if (closed) throw new KryoException("AsyncInput is closed.");
+		Chunk chunk = this.chunk;
+		if (chunk == null || chunk.position == chunk.count) {
+			if (chunk != null) free.add(chunk);
+			try {
+				this.chunk = chunk = full.take();
+			} catch (InterruptedException ex) {
+				throw new KryoException("Interrupted while waiting for the reader thread.", ex);
+			}
+		}
+		if (chunk.count == -1) {
+			// Keep the end of stream for any later fills.
+			Throwable error = this.error;
+			if (error != null) throw new KryoException("Error reading from the InputStream.", error);
+			return -1;
+		}
+		count = Math.min(count, chunk.count - chunk.position);
+		System.arraycopy(chunk.bytes, chunk.position, buffer, offset, count);
+		chunk.position += count;
+		return count;
+	}
+
+	/** Stops the reader thread and closes the InputStream. */
+	public void close () throws KryoException {
+		if (closed) return;
+		closed = true;
+		try {
+			inputStream.close();
+		} catch (IOException ignored) {
+		}
+		// Wake the reader if it is waiting for a free buffer.
+		free.offer(new Chunk(new byte[0]));
+	}
+
+	static private class Chunk {
+		final byte[] bytes;
+		int position, count;
+
+		Chunk (byte[] bytes) {
+			this.bytes = bytes;
+		}
+	}
+
+	private class Reader implements Runnable {
+		public void run () {
+			try {
+				while (true) {
+					Chunk chunk = free.take();
+					if (closed) return;
+					int count;
+					try {
+						count = inputStream.read(chunk.bytes, 0, chunk.bytes.length);
+					} catch (Throwable ex) {
+						if (!closed) error = ex;
+						count = -1;
+					}
+					chunk.position = 0;
+					chunk.count = count;
+					full.put(chunk);
+					if (count == -1) return;
+				}
+			} catch (InterruptedException ex) {
+				error = ex;
+				Chunk end = new Chunk(null);
+				end.count = -1;
+				full.offer(end);
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+
+package com.esotericsoftware.kryo.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/** An Output that writes to an OutputStream on another thread. When the buffer is full it is handed to the writer thread and
+ * writing continues in another buffer, so serialization overlaps with the stream's I/O. If all the buffers are waiting to be
+ * written, writing waits for the writer thread to finish with one.
+ * <p>
+ * An exception thrown by the OutputStream is rethrown by the next write that needs a new buffer, or by {@link #flush()} or
+ * {@link #close()}. After such an exception the remaining bytes are discarded. If the writer thread is interrupted, it stops and
+ * the next write that needs a new buffer, {@link #flush()} or {@link #close()} throws instead of waiting for it. */
+public class AsyncOutput extends Output {
+	private final int bufferCount;
+	private final BlockingQueue<Chunk> free, full;
+	private final CountDownLatch writerStopped = new CountDownLatch(1);
+	private Chunk current;
+	private volatile Throwable error;
+	private boolean closed;
+
+	/** Creates an AsyncOutput with 2 buffers, written by a new daemon thread. */
+	public AsyncOutput (OutputStream outputStream, int bufferSize) {
+		this(outputStream, bufferSize, 2, null);
+	}
+
+	/** @param bufferCount The number of buffers, at least 2. At most bufferCount - 1 buffers wait to be written at once.
+	 * @param executor Runs the writer task for as long as this output is open. If null, a new daemon thread is started. */
+	public AsyncOutput (OutputStream outputStream, int bufferSize, int bufferCount, Executor executor) {
+		super(outputStream, bufferSize);
+		if (bufferCount < 2) throw new IllegalArgumentException("bufferCount must be >= 2: " + bufferCount);
+		this.bufferCount = bufferCount;
+		free = new ArrayBlockingQueue(bufferCount);
+		full = new ArrayBlockingQueue(bufferCount);
+		current = new Chunk(buffer);
+		for (int i = 1; i < bufferCount; i++)
+			free.add(new Chunk(new byte[bufferSize]));
+		Writer writer = new Writer(outputStream);
+		if (executor != null)
+			executor.execute(writer);
+		else {
+			Thread thread = new Thread(writer, "AsyncOutput");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/** @throws UnsupportedOperationException The OutputStream of an AsyncOutput cannot be changed. */
+	public void setOutputStream (OutputStream outputStream) {
+		throw new UnsupportedOperationException("The OutputStream of an AsyncOutput cannot be changed.");
+	}
+
+	/** Hands the buffer to the writer thread if it does not have the required number of bytes remaining.
+	 * @return true if the buffer was replaced. */
+	protected boolean require (int required) throws KryoException {
+		if (capacity - position >= required) return false;
+		if (required > capacity)
+			throw new KryoException("Buffer overflow. Max capacity: " + capacity + ", required: " + required);
+		swap();
+		return true;
+	}
+
+	/** Hands the buffered bytes to the writer thread and starts a new buffer. */
+	private void swap () throws KryoException {
+		if (closed) throw new KryoException("AsyncOutput is closed.");
+		checkError();
+		if (position == 0) return;
+		current.count = position;
+		try {
+			full.put(current);
+		} catch (InterruptedException ex) {
+			throw new KryoException("Interrupted while waiting for the writer thread.", ex);
+		}
+		current = takeFree();
+		buffer = current.bytes;
+		total += position;
+		position = 0;
+	}
+
+	/** Waits for the writer thread to free a buffer.
+	 * @throws KryoException if the writer thread has stopped, since the buffers it holds will never be freed. */
+	private Chunk takeFree () throws KryoException {
+		try {
+			while (true) {
+				Chunk chunk = free.poll(100, TimeUnit.MILLISECONDS);
+				if (chunk != null) return chunk;
+				if (writerStopped.getCount() == 0) {
+					chunk = free.poll();
+					if (chunk != null) return chunk;
+					checkError();
+					throw new KryoException("The writer thread has stopped.");
+				}
+			}
+		} catch (InterruptedException ex) {
+			throw new KryoException("Interrupted while waiting for the writer thread.", ex);
+		}
+	}
+
+	private void checkError () throws KryoException {
+		Throwable error = this.error;
+		if (error != null) throw new KryoException("Error writing to the OutputStream.", error);
+	}
+
+	/** Waits until all the buffered bytes have been written, then flushes the OutputStream. */
+	public void flush () throws KryoException {
+		swap();
+		// The writer thread is idle once all the other buffers are free.
+		Chunk[] chunks = new Chunk[bufferCount - 1];
+		try {
+			for (int i = 0; i < chunks.length; i++)
+				chunks[i] = takeFree();
+		} finally {
+			for (int i = 0; i < chunks.length; i++)
+				if (chunks[i] != null) free.add(chunks[i]);
+		}
+		checkError();
+		try {
+			getOutputStream().flush();
+		} catch (IOException ex) {
+			throw new KryoException(ex);
+		}
+	}
+
+	/** Writes all the buffered bytes, stops the writer thread and closes the OutputStream. The OutputStream is only closed after the
+	 * writer thread has stopped, even if writing the buffered bytes fails. */
+	public void close () throws KryoException {
+		if (closed) return;
+		try {
+			flush();
+		} finally {
+			closed = true;
+			try {
+				full.put(Chunk.STOP);
+				writerStopped.await();
+			} catch (InterruptedException ex) {
+				throw new KryoException("Interrupted while waiting for the writer thread.", ex);
+			}
+			try {
+				getOutputStream().close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	static private class Chunk {
+		static final Chunk STOP = new Chunk(null);
+
+		final byte[] bytes;
+		int count;
+
+		Chunk (byte[] bytes) {
+			this.bytes = bytes;
+		}
+	}
+
+	private class Writer implements Runnable {
+		private final OutputStream outputStream;
+
+		Writer (OutputStream outputStream) {
+			this.outputStream = outputStream;
+		}
+
+		public void run () {
+			try {
+				while (true) {
+					Chunk chunk = full.take();
+					if (chunk == Chunk.STOP) return;
+					if (error == null) {
+						try {
+							outputStream.write(chunk.bytes, 0, chunk.count);
+						} catch (Throwable ex) {
+							error = ex;
+						}
+					}
+					// Never blocks, there is room for every buffer. A pending interrupt must not lose the buffer.
+					free.add(chunk);
+				}
+			} catch (InterruptedException ex) {
+				error = ex;
+			} finally {
+				writerStopped.countDown();
+			}
+		}
+	}
+}
@@ -0,0 +1,424 @@
+
+package com.esotericsoftware.kryo.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/** An Input that reads directly from a {@link ByteBuffer}, which may be a direct buffer. Unlike wrapping a
+ * {@link ByteBufferInputStream} with an Input, the bytes are not copied to a byte array first. Bytes are read from the buffer's
+ * position to its limit, and the buffer's position is advanced as bytes are read.
+ * @see ByteBufferOutput */
+public class ByteBufferInput extends Input {
+	ByteBuffer byteBuffer;
+	private int start;
+	private char[] chars = new char[32];
+
+	/** Creates a new Input for reading from a ByteBuffer. Bytes are read from the buffer's position to its limit. The buffer's
+	 * byte order is set to big endian. */
+	public ByteBufferInput (ByteBuffer byteBuffer) {
+		super(0);
+		setByteBuffer(byteBuffer);
+	}
+
+	/** Sets a new buffer. Bytes are read from the buffer's position to its limit. The buffer's byte order is set to big endian. The
+	 * total is reset. */
+	public void setByteBuffer (ByteBuffer byteBuffer) {
+		if (byteBuffer == null) throw new IllegalArgumentException("byteBuffer cannot be null.");
+		this.byteBuffer = byteBuffer;
+		byteBuffer.order(ByteOrder.BIG_ENDIAN);
+		start = byteBuffer.position();
+	}
+
+	public ByteBuffer getByteBuffer () {
+		return byteBuffer;
+	}
+
+	/** Sets a heap ByteBuffer that wraps the specified bytes. */
+	public void setBuffer (byte[] bytes, int offset, int count) {
+		if (bytes == null) throw new IllegalArgumentException("bytes cannot be null.");
+		setByteBuffer(ByteBuffer.wrap(bytes, offset, count));
+	}
+
+	/** Returns null, a ByteBufferInput does not read from an InputStream. */
+	public InputStream getInputStream () {
+		return null;
+	}
+
+	/** @throws UnsupportedOperationException A ByteBufferInput does not read from an InputStream. */
+	public void setInputStream (InputStream inputStream) {
+		throw new UnsupportedOperationException("A ByteBufferInput does not read from an InputStream.");
+	}
+
+	/** Returns the number of bytes read since the buffer was set. */
+	public int total () {
+		return byteBuffer.position() - start;
+	}
+
+	/** Returns the position of the buffer. */
+	public int position () {
+		return byteBuffer.position();
+	}
+
+	/** Sets the position of the buffer. */
+	public void setPosition (int position) {
+		byteBuffer.position(position);
+	}
+
+	/** Sets the position of the buffer to where it was when the buffer was set. */
+	public void rewind () {
+		byteBuffer.position(start);
+	}
+
+	public void skip (int count) throws KryoException {
+		while (count > 0) {
+			int skipCount = Math.min(require(1), count);
+			byteBuffer.position(byteBuffer.position() + skipCount);
+			count -= skipCount;
+		}
+	}
+
+	/** Called before reading to ensure the required number of bytes are available. Subclasses may override this to replace the
+	 * buffer, so the buffer must be retrieved again after calling this method.
+	 * @param required Must not be more than the capacity of the buffer.
+	 * @return the number of bytes remaining.
+	 * @throws KryoException if fewer than the required bytes remain (buffer underflow). */
+	protected int require (int required) throws KryoException {
+		int remaining = byteBuffer.remaining();
+		if (remaining < required) throw new KryoException("Buffer underflow.");
+		return remaining;
+	}
+
+	// InputStream
+
+	public int read () throws KryoException {
+		if (!byteBuffer.hasRemaining() && optional(1) == 0) return -1;
+		return byteBuffer.get() & 0xFF;
+	}
+
+	public int read (byte[] bytes) throws KryoException {
+		return read(bytes, 0, bytes.length);
+	}
+
+	public int read (byte[] bytes, int offset, int count) throws KryoException {
+		if (bytes == null) throw new IllegalArgumentException("bytes cannot be null.");
+		if (count == 0) return 0;
+		int remaining = byteBuffer.remaining();
+		if (remaining == 0) {
+			remaining = optional(1);
+			if (remaining == 0) return -1;
+		}
+		count = Math.min(remaining, count);
+		byteBuffer.get(bytes, offset, count);
+		return count;
+	}
+
+	/** Called when fewer than the specified number of bytes remain and more are wanted, but are not required. Subclasses may
+	 * override this to replace the buffer.
+	 * @return the number of bytes remaining, which is zero at the end of the data. */
+	protected int optional (int optional) throws KryoException {
+		return byteBuffer.remaining();
+	}
+
+	/** Does nothing, there is no underlying InputStream. */
+	public void close () throws KryoException {
+	}
+
+	// byte
+
+	public byte readByte () throws KryoException {
+		require(1);
+		return byteBuffer.get();
+	}
+
+	public int readByteUnsigned () throws KryoException {
+		require(1);
+		return byteBuffer.get() & 0xFF;
+	}
+
+	public void readBytes (byte[] bytes, int offset, int count) throws KryoException {
+		if (bytes == null) throw new IllegalArgumentException("bytes cannot be null.");
+		while (count > 0) {
+			int copyCount = Math.min(require(1), count);
+			byteBuffer.get(bytes, offset, copyCount);
+			offset += copyCount;
+			count -= copyCount;
+		}
+	}
+
+	// int
+
+	public int readInt () throws KryoException {
+		require(4);
+		return byteBuffer.getInt();
+	}
+
+	public int readInt (boolean optimizePositive) throws KryoException {
+		require(1);
+		int b = byteBuffer.get();
+		int result = b & 0x7F;
+		if ((b & 0x80) != 0) {
+			require(1);
+			b = byteBuffer.get();
+			result |= (b & 0x7F) << 7;
+			if ((b & 0x80) != 0) {
+				require(1);
+				b = byteBuffer.get();
+				result |= (b & 0x7F) << 14;
+				if ((b & 0x80) != 0) {
+					require(1);
+					b = byteBuffer.get();
+					result |= (b & 0x7F) << 21;
+					if ((b & 0x80) != 0) {
+						require(1);
+						b = byteBuffer.get();
+						result |= (b & 0x7F) << 28;
+					}
+				}
+			}
+		}
+		return optimizePositive ? result : ((result >>> 1) ^ -(result & 1));
+	}
+
+	public boolean canReadInt () throws KryoException {
+		if (byteBuffer.remaining() < 5) optional(5);
+		ByteBuffer byteBuffer = this.byteBuffer;
+		int p = byteBuffer.position(), limit = byteBuffer.limit();
+		if (limit - p >= 5) return true;
+		for (; p < limit; p++)
+			if ((byteBuffer.get(p) & 0x80) == 0) return true;
+		return false;
+	}
+
+	// string
+
+	public String readString () throws KryoException {
+		int charCount = readInt(true);
+		switch (charCount) {
+		case 0:
+			return null;
+		case 1:
+			return "";
+		}
+		charCount--;
+		if (chars.length < charCount) chars = new char[charCount];
+		char[] chars = this.chars;
+		int charIndex = 0;
+		while (charIndex < charCount) {
+			if (!byteBuffer.hasRemaining()) require(1);
+			int b = byteBuffer.get() & 0xFF;
+			switch (b >> 4) {
+			case 0:
+			case 1:
+			case 2:
+			case 3:
+			case 4:
+			case 5:
+			case 6:
+			case 7:
+				chars[charIndex] = (char)b;
+				break;
+			case 12:
+			case 13:
+				require(1);
+				chars[charIndex] = (char)((b & 0x1F) << 6 | byteBuffer.get() & 0x3F);
+				break;
+			case 14:
+				require(2);
+				chars[charIndex] = (char)((b & 0x0F) << 12 | (byteBuffer.get() & 0x3F) << 6 | byteBuffer.get() & 0x3F);
+				break;
+			}
+			charIndex++;
+		}
+		return new String(chars, 0, charCount);
+	}
+
+	public String readString8 () throws KryoException {
+		int charCount = readInt(true);
+		switch (charCount) {
+		case 0:
+			return null;
+		case 1:
+			return "";
+		}
+		charCount--;
+		if (chars.length < charCount) chars = new char[charCount];
+		char[] chars = this.chars;
+		for (int charIndex = 0; charIndex < charCount;) {
+			int count = Math.min(require(1), charCount - charIndex);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			for (int n = charIndex + count; charIndex < n; charIndex++)
+				chars[charIndex] = (char)(byteBuffer.get() & 0xFF);
+		}
+		return new String(chars, 0, charCount);
+	}
+
+	public String readString7 () throws KryoException {
+		int b = readByte();
+		switch (b) {
+		case 0:
+			return "";
+		case -1:
+			return null;
+		}
+		char[] chars = this.chars;
+		chars[0] = (char)(b & 0x7F);
+		int charCount = 1;
+		while ((b & 0x80) == 0) {
+			require(1);
+			b = byteBuffer.get();
+			if (charCount == chars.length) {
+				char[] newChars = new char[charCount * 2];
+				System.arraycopy(chars, 0, newChars, 0, charCount);
+				this.chars = chars = newChars;
+			}
+			chars[charCount++] = (char)(b & 0x7F);
+		}
+		return new String(chars, 0, charCount);
+	}
+
+	// short
+
+	public short readShort () throws KryoException {
+		require(2);
+		return byteBuffer.getShort();
+	}
+
+	public int readShortUnsigned () throws KryoException {
+		require(2);
+		return byteBuffer.getShort() & 0xFFFF;
+	}
+
+	public short readShort (boolean optimizePositive) throws KryoException {
+		require(1);
+		byte value = byteBuffer.get();
+		if (optimizePositive) {
+			if (value != -1) return (short)(value & 0xFF);
+		} else {
+			if (value != -128) return value;
+		}
+		require(2);
+		return byteBuffer.getShort();
+	}
+
+	// long
+
+	public long readLong () throws KryoException {
+		require(8);
+		return byteBuffer.getLong();
+	}
+
+	public long readLong (boolean optimizePositive) throws KryoException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			require(1);
+			int b = byteBuffer.get();
+			result |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) break;
+		}
+		if (!optimizePositive) result = (result >>> 1) ^ -(result & 1);
+		return result;
+	}
+
+	// boolean
+
+	public boolean readBoolean () throws KryoException {
+		require(1);
+		return byteBuffer.get() == 1;
+	}
+
+	// char
+
+	public char readChar () throws KryoException {
+		require(2);
+		return byteBuffer.getChar();
+	}
+
+	// arrays
+
+	public void readShorts (short[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(2) / 2);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asShortBuffer().get(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 2);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void readInts (int[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(4) / 4);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asIntBuffer().get(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 4);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void readLongs (long[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(8) / 8);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asLongBuffer().get(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 8);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void readFloats (float[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(4) / 4);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asFloatBuffer().get(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 4);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void readDoubles (double[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(8) / 8);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asDoubleBuffer().get(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 8);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void readChars (char[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(2) / 2);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asCharBuffer().get(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 2);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void readInts (int[] values, int offset, int count, boolean optimizePositive) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		for (int n = offset + count; offset < n; offset++)
+			values[offset] = readInt(optimizePositive);
+	}
+
+	public void readLongs (long[] values, int offset, int count, boolean optimizePositive) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		for (int n = offset + count; offset < n; offset++)
+			values[offset] = readLong(optimizePositive);
+	}
+}
@@ -0,0 +1,468 @@
+
+package com.esotericsoftware.kryo.io;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/** An Output that writes directly to a {@link ByteBuffer}, which may be a direct buffer. Unlike wrapping a
+ * {@link ByteBufferOutputStream} with an Output, the bytes are not staged in a byte array and copied. The bytes written are the
+ * same as for {@link Output}. The buffer is written from position zero and its position is the number of bytes written.
+ * @see ByteBufferInput */
+public class ByteBufferOutput extends Output {
+	private ByteBuffer byteBuffer;
+	private int maxCapacity;
+	private char[] chars = new char[32];
+
+	/** Creates a new Output for writing to a direct ByteBuffer.
+	 * @param bufferSize The initial and maximum size of the buffer. An exception is thrown if this size is exceeded. */
+	public ByteBufferOutput (int bufferSize) {
+		this(bufferSize, bufferSize);
+	}
+
+	/** Creates a new Output for writing to a direct ByteBuffer.
+	 * @param bufferSize The initial size of the buffer.
+	 * @param maxBufferSize The buffer is doubled as needed until it exceeds maxBufferSize and an exception is thrown. Can be -1
+	 *           for no maximum. */
+	public ByteBufferOutput (int bufferSize, int maxBufferSize) {
+		super(0, 0);
+		setByteBuffer(ByteBuffer.allocateDirect(bufferSize), maxBufferSize);
+	}
+
+	/** Creates a new Output for writing to a ByteBuffer.
+	 * @param byteBuffer An exception is thrown if more bytes are written than the capacity of this buffer. */
+	public ByteBufferOutput (ByteBuffer byteBuffer) {
+		this(byteBuffer, byteBuffer.capacity());
+	}
+
+	/** Creates a new Output for writing to a ByteBuffer.
+	 * @param maxBufferSize The buffer is doubled as needed until it exceeds maxBufferSize and an exception is thrown. Can be -1
+	 *           for no maximum. */
+	public ByteBufferOutput (ByteBuffer byteBuffer, int maxBufferSize) {
+		super(0, 0);
+		setByteBuffer(byteBuffer, maxBufferSize);
+	}
+
+	/** Sets a new buffer, discarding any bytes written. The buffer is cleared and its byte order is set to big endian.
+	 * @param maxBufferSize The buffer is doubled as needed until it exceeds maxBufferSize and an exception is thrown. Can be -1
+	 *           for no maximum. When the buffer grows, a new buffer is allocated, so the specified buffer will no longer be used. */
+	public void setByteBuffer (ByteBuffer byteBuffer, int maxBufferSize) {
+		if (byteBuffer == null) throw new IllegalArgumentException("byteBuffer cannot be null.");
+		this.byteBuffer = byteBuffer;
+		this.maxCapacity = maxBufferSize == -1 ? Integer.MAX_VALUE : maxBufferSize;
+		byteBuffer.clear();
+		byteBuffer.order(ByteOrder.BIG_ENDIAN);
+	}
+
+	/** Returns the buffer. Its position is the number of bytes written. Note that the buffer is replaced when it grows. */
+	public ByteBuffer getByteBuffer () {
+		return byteBuffer;
+	}
+
+	/** Returns null, the bytes are not stored in a byte array.
+	 * @see #getByteBuffer() */
+	public byte[] getBuffer () {
+		return null;
+	}
+
+	/** Returns null, a ByteBufferOutput does not write to an OutputStream. */
+	public OutputStream getOutputStream () {
+		return null;
+	}
+
+	/** @throws UnsupportedOperationException A ByteBufferOutput does not write to an OutputStream. */
+	public void setOutputStream (OutputStream outputStream) {
+		throw new UnsupportedOperationException("A ByteBufferOutput does not write to an OutputStream.");
+	}
+
+	/** Returns a new byte array containing the bytes written. */
+	public byte[] toBytes () {
+		byte[] bytes = new byte[byteBuffer.position()];
+		ByteBuffer buffer = byteBuffer.duplicate();
+		buffer.flip();
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/** Returns the number of bytes written. */
+	public int position () {
+		return byteBuffer.position();
+	}
+
+	public int total () {
+		return byteBuffer.position();
+	}
+
+	public void clear () {
+		byteBuffer.clear();
+	}
+
+	/** @return true if the buffer has been resized. */
+	protected boolean require (int required) throws KryoException {
+		ByteBuffer byteBuffer = this.byteBuffer;
+		if (byteBuffer.remaining() >= required) return false;
+		int capacity = byteBuffer.capacity(), position = byteBuffer.position();
+		if (required > maxCapacity - position)
+			throw new KryoException("Buffer overflow. Max capacity: " + maxCapacity + ", required: " + (position + required));
+		do {
+			capacity = (int)Math.min(Math.max(capacity * 2L, 16), maxCapacity);
+		} while (capacity - position < required);
+		ByteBuffer newBuffer = byteBuffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		newBuffer.order(ByteOrder.BIG_ENDIAN);
+		byteBuffer.flip();
+		newBuffer.put(byteBuffer);
+		this.byteBuffer = newBuffer;
+		return true;
+	}
+
+	/** Makes room for at least one value of the specified size and returns how many of the values fit in the buffer, so large arrays
+	 * are written in chunks rather than requiring room for the whole array at once. */
+	private int fit (int count, int size) throws KryoException {
+		if (byteBuffer.remaining() < size) require(size);
+		return Math.min(count, byteBuffer.remaining() / size);
+	}
+
+	// OutputStream
+
+	/** Does nothing, the bytes are already in the buffer. */
+	public void flush () throws KryoException {
+	}
+
+	/** Does nothing, there is no underlying OutputStream. */
+	public void close () throws KryoException {
+	}
+
+	public void write (int value) throws KryoException {
+		require(1);
+		byteBuffer.put((byte)value);
+	}
+
+	public void write (byte[] bytes) throws KryoException {
+		writeBytes(bytes, 0, bytes.length);
+	}
+
+	public void write (byte[] bytes, int offset, int length) throws KryoException {
+		writeBytes(bytes, offset, length);
+	}
+
+	// byte
+
+	public void writeByte (byte value) throws KryoException {
+		require(1);
+		byteBuffer.put(value);
+	}
+
+	public void writeByte (int value) throws KryoException {
+		require(1);
+		byteBuffer.put((byte)value);
+	}
+
+	public void writeBytes (byte[] bytes) throws KryoException {
+		writeBytes(bytes, 0, bytes.length);
+	}
+
+	public void writeBytes (byte[] bytes, int offset, int count) throws KryoException {
+		if (bytes == null) throw new IllegalArgumentException("bytes cannot be null.");
+		while (count > 0) {
+			int fit = fit(count, 1);
+			byteBuffer.put(bytes, offset, fit);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	// int
+
+	public void writeInt (int value) throws KryoException {
+		require(4);
+		byteBuffer.putInt(value);
+	}
+
+	public int writeInt (int value, boolean optimizePositive) throws KryoException {
+		if (!optimizePositive) value = (value << 1) ^ (value >> 31);
+		int length;
+		if ((value & ~0x7F) == 0)
+			length = 1;
+		else if ((value >>> 7 & ~0x7F) == 0)
+			length = 2;
+		else if ((value >>> 14 & ~0x7F) == 0)
+			length = 3;
+		else if ((value >>> 21 & ~0x7F) == 0)
+			length = 4;
+		else
+			length = 5;
+		require(length);
+		ByteBuffer byteBuffer = this.byteBuffer;
+		switch (length) {
+		case 5:
+			byteBuffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		case 4:
+			byteBuffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		case 3:
+			byteBuffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		case 2:
+			byteBuffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		case 1:
+			byteBuffer.put((byte)value);
+		}
+		return length;
+	}
+
+	// reserved length
+
+	public int reserveLength () throws KryoException {
+		require(5);
+		int reserved = total();
+		byteBuffer.position(byteBuffer.position() + 5);
+		return reserved;
+	}
+
+	public int writeReservedLength (int reserved, boolean compact) throws KryoException {
+		ByteBuffer byteBuffer = this.byteBuffer;
+		int position = byteBuffer.position();
+		int index = reserved - (total() - position);
+		if (index < 0) throw new KryoException("Reserved bytes have already been flushed: " + reserved);
+		int start = index + 5, length = position - start;
+		int count = compact ? lengthBytes(length) : 5;
+		for (int i = 1, value = length; i <= count; i++, value >>>= 7)
+			byteBuffer.put(index++, (byte)(i < count ? (value & 0x7F) | 0x80 : value));
+		if (count < 5) {
+			ByteBuffer bytes = byteBuffer.duplicate();
+			bytes.limit(position);
+			bytes.position(start);
+			byteBuffer.position(index);
+			byteBuffer.put(bytes);
+		}
+		return length;
+	}
+
+	// string
+
+	public void writeString (String value) throws KryoException {
+		if (value == null) {
+			writeByte(0);
+			return;
+		}
+		int charCount = value.length();
+		if (chars.length < charCount) chars = new char[charCount];
+		char[] chars = this.chars;
+		value.getChars(0, charCount, chars, 0);
+		writeInt(charCount + 1, true);
+		// Reserve space for 8 bit chars, then grow as needed for any chars that are larger.
+		require(charCount);
+		ByteBuffer byteBuffer = this.byteBuffer;
+		int charIndex = 0;
+		for (; charIndex < charCount; charIndex++) {
+			int c = chars[charIndex];
+			if (c > 127) break;
+			byteBuffer.put((byte)c);
+		}
+		for (; charIndex < charCount; charIndex++) {
+			int c = chars[charIndex];
+			if (c <= 0x007F) {
+				require(1);
+				byteBuffer = this.byteBuffer;
+				byteBuffer.put((byte)c);
+			} else if (c > 0x07FF) {
+				require(3);
+				byteBuffer = this.byteBuffer;
+				byteBuffer.put((byte)(0xE0 | c >> 12 & 0x0F));
+				byteBuffer.put((byte)(0x80 | c >> 6 & 0x3F));
+				byteBuffer.put((byte)(0x80 | c & 0x3F));
+			} else {
+				require(2);
+				byteBuffer = this.byteBuffer;
+				byteBuffer.put((byte)(0xC0 | c >> 6 & 0x1F));
+				byteBuffer.put((byte)(0x80 | c & 0x3F));
+			}
+		}
+	}
+
+	public void writeString8 (String value) throws KryoException {
+		if (value == null) {
+			writeByte(0);
+			return;
+		}
+		int charCount = value.length();
+		writeInt(charCount + 1, true);
+		require(charCount);
+		ByteBuffer byteBuffer = this.byteBuffer;
+		for (int i = 0; i < charCount; i++)
+			byteBuffer.put((byte)value.charAt(i));
+	}
+
+	public void writeString7 (String value) throws KryoException {
+		if (value == null) {
+			writeByte(-1);
+			return;
+		}
+		int charCount = value.length();
+		if (charCount == 0) {
+			writeByte(0);
+			return;
+		}
+		require(charCount);
+		ByteBuffer byteBuffer = this.byteBuffer;
+		charCount--;
+		for (int i = 0; i < charCount; i++)
+			byteBuffer.put((byte)value.charAt(i));
+		byteBuffer.put((byte)(value.charAt(charCount) | 0x80));
+	}
+
+	// short
+
+	public void writeShort (int value) throws KryoException {
+		require(2);
+		byteBuffer.putShort((short)value);
+	}
+
+	public int writeShort (int value, boolean optimizePositive) throws KryoException {
+		if (optimizePositive) {
+			if (value >= 0 && value <= 254) {
+				require(1);
+				byteBuffer.put((byte)value);
+				return 1;
+			}
+			require(3);
+			byteBuffer.put((byte)-1); // short positive
+		} else {
+			if (value >= -127 && value <= 127) {
+				require(1);
+				byteBuffer.put((byte)value);
+				return 1;
+			}
+			require(3);
+			byteBuffer.put((byte)-128); // short
+		}
+		byteBuffer.putShort((short)value);
+		return 3;
+	}
+
+	// long
+
+	public void writeLong (long value) throws KryoException {
+		require(8);
+		byteBuffer.putLong(value);
+	}
+
+	public int writeLong (long value, boolean optimizePositive) throws KryoException {
+		if (!optimizePositive) value = (value << 1) ^ (value >> 63);
+		int length = 1;
+		for (long remaining = value >>> 7; remaining != 0 && length < 10; remaining >>>= 7)
+			length++;
+		require(length);
+		ByteBuffer byteBuffer = this.byteBuffer;
+		for (int i = 1; i < length; i++) {
+			byteBuffer.put((byte)(((int)value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		byteBuffer.put((byte)value);
+		return length;
+	}
+
+	// boolean
+
+	public void writeBoolean (boolean value) throws KryoException {
+		require(1);
+		byteBuffer.put((byte)(value ? 1 : 0));
+	}
+
+	// char
+
+	public void writeChar (char value) throws KryoException {
+		require(2);
+		byteBuffer.putChar(value);
+	}
+
+	// arrays
+
+	public void writeShorts (short[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = fit(count, 2);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asShortBuffer().put(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 2);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void writeInts (int[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = fit(count, 4);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asIntBuffer().put(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 4);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void writeLongs (long[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = fit(count, 8);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asLongBuffer().put(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 8);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void writeFloats (float[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = fit(count, 4);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asFloatBuffer().put(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 4);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void writeDoubles (double[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = fit(count, 8);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asDoubleBuffer().put(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 8);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void writeChars (char[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = fit(count, 2);
+			ByteBuffer byteBuffer = this.byteBuffer;
+			byteBuffer.asCharBuffer().put(values, offset, fit);
+			byteBuffer.position(byteBuffer.position() + fit * 2);
+			offset += fit;
+			count -= fit;
+		}
+	}
+
+	public void writeInts (int[] values, int offset, int count, boolean optimizePositive) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		for (int n = offset + count; offset < n; offset++)
+			writeInt(values[offset], optimizePositive);
+	}
+
+	public void writeLongs (long[] values, int offset, int count, boolean optimizePositive) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		for (int n = offset + count; offset < n; offset++)
+			writeLong(values[offset], optimizePositive);
+	}
+}
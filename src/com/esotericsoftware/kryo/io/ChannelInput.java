@@ -0,0 +1,113 @@
+
+package com.esotericsoftware.kryo.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/** An Input that reads from a {@link ReadableByteChannel} into a direct {@link ByteBuffer}. Because the buffer is direct, the
+ * channel reads into it without making a temporary copy.
+ * <p>
+ * The channel may be non-blocking. In that case {@link #receive()} can be called when the channel is readable to buffer the bytes
+ * that are available, and a read that needs more bytes than are available throws a buffer underflow exception rather than
+ * waiting. Objects should only be read once all of their bytes have been received, eg by writing a length before each object.
+ * @see ChannelOutput */
+public class ChannelInput extends ByteBufferInput {
+	private ReadableByteChannel channel;
+	/** The number of bytes read that have been discarded from the buffer. */
+	private int discarded;
+
+	/** Creates a new Input for reading from a channel. A buffer size of 4096 is used. */
+	public ChannelInput (ReadableByteChannel channel) {
+		this(channel, 4096);
+	}
+
+	/** Creates a new Input for reading from a channel.
+	 * @param bufferSize The initial size of the buffer. The buffer grows if a single read requires more bytes than this. */
+	public ChannelInput (ReadableByteChannel channel, int bufferSize) {
+		super(ByteBuffer.allocateDirect(bufferSize));
+		setChannel(channel);
+	}
+
+	public ReadableByteChannel getChannel () {
+		return channel;
+	}
+
+	/** Sets a new channel. The total is reset, discarding any buffered bytes. */
+	public void setChannel (ReadableByteChannel channel) {
+		if (channel == null) throw new IllegalArgumentException("channel cannot be null.");
+		this.channel = channel;
+		byteBuffer.limit(0);
+		discarded = 0;
+	}
+
+	/** Returns the number of bytes received that have not been read. */
+	public int available () {
+		return byteBuffer.remaining();
+	}
+
+	/** Returns the total number of bytes read. */
+	public int total () {
+		return discarded + byteBuffer.position();
+	}
+
+	/** Reads the bytes available from the channel into the buffer, keeping any bytes that have not been read. A non-blocking channel
+	 * is not waited on.
+	 * @return the number of bytes received, or -1 if the end of the channel has been reached. */
+	public int receive () throws KryoException {
+		ByteBuffer byteBuffer = this.byteBuffer;
+		discarded += byteBuffer.position();
+		byteBuffer.compact();
+		try {
+			return channel.read(byteBuffer);
+		} catch (IOException ex) {
+			throw new KryoException(ex);
+		} finally {
+			byteBuffer.flip();
+		}
+	}
+
+	/** Receives from the channel until the required bytes are buffered, growing the buffer if it is too small.
+	 * @throws KryoException if the end of the channel is reached or a non-blocking channel has no more bytes available (buffer
+	 *            underflow). */
+	protected int require (int required) throws KryoException {
+		int remaining = byteBuffer.remaining();
+		if (remaining >= required) return remaining;
+		if (required > byteBuffer.capacity()) grow(required);
+		while (true) {
+			int count = receive();
+			remaining = byteBuffer.remaining();
+			if (remaining >= required) return remaining;
+			if (count <= 0) throw new KryoException("Buffer underflow.");
+		}
+	}
+
+	protected int optional (int optional) throws KryoException {
+		int remaining = byteBuffer.remaining();
+		if (remaining >= optional) return remaining;
+		optional = Math.min(optional, byteBuffer.capacity());
+		while (true) {
+			int count = receive();
+			remaining = byteBuffer.remaining();
+			if (remaining >= optional || count <= 0) return remaining;
+		}
+	}
+
+	private void grow (int required) {
+		ByteBuffer newBuffer = ByteBuffer.allocateDirect(Math.max(required, byteBuffer.capacity() * 2));
+		discarded += byteBuffer.position();
+		newBuffer.put(byteBuffer);
+		newBuffer.flip();
+		byteBuffer = newBuffer;
+	}
+
+	/** Closes the channel. */
+	public void close () throws KryoException {
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+		}
+	}
+}
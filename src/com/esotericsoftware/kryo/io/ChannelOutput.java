@@ -0,0 +1,94 @@
+
+package com.esotericsoftware.kryo.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/** An Output that buffers data in a direct {@link ByteBuffer} and flushes to a {@link WritableByteChannel}. Because the buffer is
+ * direct, the channel writes from it without making a temporary copy.
+ * <p>
+ * The channel may be non-blocking. A flush writes as many bytes as the channel accepts and keeps the rest for the next flush, so
+ * the thread never waits for the channel. When the channel does not accept enough bytes to make room for a write, the buffer
+ * grows instead. After a flush, {@link #position()} is the number of bytes still waiting to be written, eg to decide whether to
+ * register interest in the channel becoming writable.
+ * @see ChannelInput */
+public class ChannelOutput extends ByteBufferOutput {
+	private WritableByteChannel channel;
+
+	/** Creates a new Output for writing to a channel. A buffer size of 4096 is used, which grows without a maximum. */
+	public ChannelOutput (WritableByteChannel channel) {
+		this(channel, 4096, -1);
+	}
+
+	/** Creates a new Output for writing to a channel.
+	 * @param bufferSize The initial size of the buffer.
+	 * @param maxBufferSize The buffer is doubled as needed to hold the bytes the channel has not accepted, until it exceeds
+	 *           maxBufferSize and an exception is thrown. Can be -1 for no maximum. */
+	public ChannelOutput (WritableByteChannel channel, int bufferSize, int maxBufferSize) {
+		super(bufferSize, maxBufferSize);
+		setChannel(channel);
+	}
+
+	public WritableByteChannel getChannel () {
+		return channel;
+	}
+
+	/** Sets a new channel. The total is reset, discarding any buffered bytes. */
+	public void setChannel (WritableByteChannel channel) {
+		if (channel == null) throw new IllegalArgumentException("channel cannot be null.");
+		this.channel = channel;
+		clear();
+	}
+
+	/** Returns the number of bytes that have been written but not yet accepted by the channel. */
+	public int position () {
+		return getByteBuffer().position();
+	}
+
+	/** Returns the total number of bytes written. This may include bytes that have not been accepted by the channel. */
+	public int total () {
+		return total + getByteBuffer().position();
+	}
+
+	/** Sets the total to zero, discarding any buffered bytes. */
+	public void clear () {
+		super.clear();
+		total = 0;
+	}
+
+	/** Flushes to make room for the required bytes and grows the buffer if the channel did not accept enough. */
+	protected boolean require (int required) throws KryoException {
+		ByteBuffer byteBuffer = getByteBuffer();
+		if (byteBuffer.remaining() >= required) return false;
+		flush();
+		if (byteBuffer.remaining() >= required) return false;
+		return super.require(required);
+	}
+
+	/** Writes as many buffered bytes as the channel accepts. Any bytes the channel does not accept are kept and written first by the
+	 * next flush. */
+	public void flush () throws KryoException {
+		ByteBuffer byteBuffer = getByteBuffer();
+		if (byteBuffer.position() == 0) return;
+		byteBuffer.flip();
+		try {
+			total += channel.write(byteBuffer);
+		} catch (IOException ex) {
+			throw new KryoException(ex);
+		} finally {
+			byteBuffer.compact();
+		}
+	}
+
+	/** Flushes any buffered bytes and closes the channel. With a non-blocking channel, bytes the channel does not accept are lost. */
+	public void close () throws KryoException {
+		flush();
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+		}
+	}
+}
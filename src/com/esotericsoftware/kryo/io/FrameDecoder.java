@@ -0,0 +1,125 @@
+
+package com.esotericsoftware.kryo.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/** Accumulates bytes that arrive in pieces, such as from a non-blocking channel, and provides them one complete frame at a time.
+ * A frame is a length written with {@link Output#writeInt(int, boolean) writeInt(length, true)} followed by that many bytes.
+ * Whether a frame is complete is determined from its length alone, so an object is only read once all of its bytes have arrived
+ * and a partial message never causes a buffer underflow exception or is parsed more than once.
+ * 
+ * <pre>
+ * decoder.receive(channel);
+ * Input frame;
+ * while ((frame = decoder.nextFrame()) != null)
+ * 	handle(kryo.readClassAndObject(frame));
+ * </pre> */
+public class FrameDecoder {
+	private final int maxFrameSize;
+	private final Input input = new Input(0);
+	private byte[] buffer;
+	private int start, end;
+	private int frameStart, frameLength;
+
+	/** Creates a FrameDecoder with a buffer size of 2048 and a maximum frame size of 1MB. */
+	public FrameDecoder () {
+		this(2048, 1024 * 1024);
+	}
+
+	/** @param bufferSize The initial size of the buffer. The buffer grows as needed to hold a frame.
+	 * @param maxFrameSize An exception is thrown if the length of a frame is larger than this. */
+	public FrameDecoder (int bufferSize, int maxFrameSize) {
+		if (maxFrameSize < 0) throw new IllegalArgumentException("maxFrameSize must be >= 0: " + maxFrameSize);
+		buffer = new byte[Math.max(bufferSize, 1)];
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/** Adds bytes to the end of the data. */
+	public void add (byte[] bytes, int offset, int count) {
+		if (bytes == null) throw new IllegalArgumentException("bytes cannot be null.");
+		require(count);
+		System.arraycopy(bytes, offset, buffer, end, count);
+		end += count;
+	}
+
+	/** Adds the remaining bytes of the buffer to the end of the data. */
+	public void add (ByteBuffer byteBuffer) {
+		if (byteBuffer == null) throw new IllegalArgumentException("byteBuffer cannot be null.");
+		int count = byteBuffer.remaining();
+		require(count);
+		byteBuffer.get(buffer, end, count);
+		end += count;
+	}
+
+	/** Reads the bytes available from the channel and adds them to the end of the data. A non-blocking channel is not waited on.
+	 * @return the number of bytes read, or -1 if the end of the channel has been reached. */
+	public int receive (ReadableByteChannel channel) throws KryoException {
+		if (channel == null) throw new IllegalArgumentException("channel cannot be null.");
+		require(Math.max(needed(), 1));
+		try {
+			int count = channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end));
+			if (count > 0) end += count;
+			return count;
+		} catch (IOException ex) {
+			throw new KryoException(ex);
+		}
+	}
+
+	/** Returns the number of bytes that must be added before the next frame is complete, or 0 if it is complete. While the length of
+	 * the next frame has not been fully received, this is the number of bytes needed to complete the length.
+	 * @throws KryoException if the length of the frame is invalid or larger than the maximum frame size. */
+	public int needed () throws KryoException {
+		byte[] buffer = this.buffer;
+		int p = start, length = 0;
+		for (int shift = 0;; shift += 7) {
+			if (p == end) return 1;
+			int b = buffer[p++];
+			length |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) break;
+			if (shift == 28) throw new KryoException("Malformed frame length.");
+		}
+		if (length < 0 || length > maxFrameSize)
+			throw new KryoException("Frame too large. Max size: " + maxFrameSize + ", length: " + (length & 0xFFFFFFFFL));
+		frameStart = p;
+		frameLength = length;
+		return Math.max(p + length - end, 0);
+	}
+
+	/** Returns an Input for reading the next frame and advances past it, or null if the next frame is not complete. The Input reads
+	 * directly from this decoder's buffer and is only valid until more bytes are added. Reading past the end of the frame throws a
+	 * buffer underflow exception. */
+	public Input nextFrame () throws KryoException {
+		if (needed() > 0) return null;
+		input.setBuffer(buffer, frameStart, frameLength);
+		start = frameStart + frameLength;
+		if (start == end) start = end = 0;
+		return input;
+	}
+
+	/** Returns the number of bytes added that have not been returned as a frame. */
+	public int available () {
+		return end - start;
+	}
+
+	/** Discards all the bytes added. */
+	public void clear () {
+		start = 0;
+		end = 0;
+	}
+
+	/** Makes room for the specified number of bytes after the end, discarding bytes before the start. */
+	private void require (int count) {
+		if (buffer.length - end >= count) return;
+		int remaining = end - start;
+		byte[] newBuffer = buffer;
+		if (remaining + count > buffer.length) newBuffer = new byte[Math.max(buffer.length * 2, remaining + count)];
+		System.arraycopy(buffer, start, newBuffer, 0, remaining);
+		buffer = newBuffer;
+		start = 0;
+		end = remaining;
+	}
+}
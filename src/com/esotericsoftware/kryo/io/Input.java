@@ -58,7 +58,7 @@ public class Input extends InputStream {
 		if (bytes == null) throw new IllegalArgumentException("bytes cannot be null.");
 		buffer = bytes;
 		position = offset;
-		limit = count;
+		limit = offset + count;
 		capacity = bytes.length;
 		total = 0;
 		inputStream = null;
@@ -204,7 +204,7 @@ public class Input extends InputStream {
 	public long skip (long count) throws KryoException {
 		long remaining = count;
 		while (remaining > 0) {
-			int skip = Math.max(Integer.MAX_VALUE, (int)remaining);
+			int skip = (int)Math.min(Integer.MAX_VALUE, remaining);
 			skip(skip);
 			remaining -= skip;
 		}
@@ -273,6 +273,7 @@ public class Input extends InputStream {
 	/** Reads a 1-5 byte int. */
 	public int readInt (boolean optimizePositive) throws KryoException {
 		if (require(1) < 5) return readInt_slow(optimizePositive);
+		// Decoding a word at a time like readLong measured slower for these 1-5 bytes, even reading the word with Unsafe.
 		int b = buffer[position++];
 		int result = b & 0x7F;
 		if ((b & 0x80) != 0) {
@@ -534,50 +535,61 @@ public class Input extends InputStream {
 
 	/** Reads a 1-10 byte long. */
 	public long readLong (boolean optimizePositive) throws KryoException {
+		int remaining = require(1);
 		byte[] buffer = this.buffer;
-		if (require(1) < 10) return readLong_slow(optimizePositive);
-		int b = buffer[position++];
-		long result = b & 0x7F;
-		if ((b & 0x80) != 0) {
-			b = buffer[position++];
-			result |= (long)(b & 0x7F) << 7;
-			if ((b & 0x80) != 0) {
-				b = buffer[position++];
-				result |= (long)(b & 0x7F) << 14;
-				if ((b & 0x80) != 0) {
-					b = buffer[position++];
-					result |= (long)(b & 0x7F) << 21;
-					if ((b & 0x80) != 0) {
-						b = buffer[position++];
-						result |= (long)(b & 0x7F) << 28;
-						if ((b & 0x80) != 0) {
-							b = buffer[position++];
-							result |= (long)(b & 0x7F) << 35;
-							if ((b & 0x80) != 0) {
-								b = buffer[position++];
-								result |= (long)(b & 0x7F) << 42;
-								if ((b & 0x80) != 0) {
-									b = buffer[position++];
-									result |= (long)(b & 0x7F) << 49;
-									if ((b & 0x80) != 0) {
-										b = buffer[position++];
-										result |= (long)(b & 0x7F) << 56;
-										if ((b & 0x80) != 0) {
-											b = buffer[position++];
-											result |= (long)(b & 0x7F) << 63;
-										}
-									}
-								}
-							}
-						}
-					}
-				}
-			}
+		int p = position;
+		int b = buffer[p];
+		if (b >= 0) {
+			position = p + 1;
+			return optimizePositive ? b : ((b >>> 1) ^ -(b & 1));
+		}
+		if (remaining < 10) return readLong_slow(optimizePositive);
+		int b2 = buffer[p + 1];
+		if (b2 >= 0) {
+			position = p + 2;
+			long result = b & 0x7F | b2 << 7;
+			return optimizePositive ? result : ((result >>> 1) ^ -(result & 1));
+		}
+		long word = readWord(buffer, p);
+		long stop = ~word & 0x8080808080808080L;
+		long result;
+		if (stop != 0) {
+			int bits = Long.numberOfTrailingZeros(stop) + 1;
+			position = p + (bits >>> 3);
+			result = compact(bits == 64 ? word : word & (1L << bits) - 1);
+		} else {
+			// More than 8 bytes.
+			result = compact(word);
+			p += 8;
+			b = buffer[p++];
+			result |= (long)(b & 0x7F) << 56;
+			if ((b & 0x80) != 0) result |= (long)buffer[p++] << 63;
+			position = p;
 		}
 		if (!optimizePositive) result = (result >>> 1) ^ -(result & 1);
 		return result;
 	}
 
+	/** Returns 8 bytes as a little endian long, so the first byte of a variable length value is the lowest byte. */
+	static private long readWord (byte[] buffer, int p) {
+		return buffer[p] & 0xFFL //
+			| (buffer[p + 1] & 0xFFL) << 8 //
+			| (buffer[p + 2] & 0xFFL) << 16 //
+			| (buffer[p + 3] & 0xFFL) << 24 //
+			| (buffer[p + 4] & 0xFFL) << 32 //
+			| (buffer[p + 5] & 0xFFL) << 40 //
+			| (buffer[p + 6] & 0xFFL) << 48 //
+			| (long)buffer[p + 7] << 56;
+	}
+
+	/** Removes the high bit of each byte of a variable length value read by {@link #readWord(byte[], int)}, packing the 7 bit
+	 * groups together. This merges pairs of bytes, then pairs of those, then the two halves, without a branch per byte. */
+	static private long compact (long word) {
+		word = word & 0x007F007F007F007FL | (word & 0x7F007F007F007F00L) >>> 1;
+		word = word & 0x00003FFF00003FFFL | (word & 0x3FFF00003FFF0000L) >>> 2;
+		return word & 0x000000000FFFFFFFL | (word & 0x0FFFFFFF00000000L) >>> 4;
+	}
+
 	private long readLong_slow (boolean optimizePositive) {
 		// The buffer is guaranteed to have at least 1 byte.
 		int b = buffer[position++];
@@ -658,4 +670,197 @@ public class Input extends InputStream {
 	public double readDouble (double precision, boolean optimizePositive) throws KryoException {
 		return readLong(optimizePositive) / (double)precision;
 	}
+
+	// arrays
+
+	/** Reads 2 byte shorts. */
+	public short[] readShorts (int length) throws KryoException {
+		short[] values = new short[length];
+		readShorts(values, 0, length);
+		return values;
+	}
+
+	/** Reads 2 byte shorts. The buffer is checked once for as many values as it can hold. */
+	public void readShorts (short[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(2) / 2);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;)
+				values[offset++] = (short)((buffer[position++] & 0xFF) << 8 | buffer[position++] & 0xFF);
+			count -= fit;
+		}
+	}
+
+	/** Reads 4 byte ints. */
+	public int[] readInts (int length) throws KryoException {
+		int[] values = new int[length];
+		readInts(values, 0, length);
+		return values;
+	}
+
+	/** Reads 4 byte ints. The buffer is checked once for as many values as it can hold. */
+	public void readInts (int[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(4) / 4);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;)
+				values[offset++] = (buffer[position++] & 0xFF) << 24 | (buffer[position++] & 0xFF) << 16 | (buffer[position++] & 0xFF) << 8
+					| buffer[position++] & 0xFF;
+			count -= fit;
+		}
+	}
+
+	/** Reads 8 byte longs. */
+	public long[] readLongs (int length) throws KryoException {
+		long[] values = new long[length];
+		readLongs(values, 0, length);
+		return values;
+	}
+
+	/** Reads 8 byte longs. The buffer is checked once for as many values as it can hold. */
+	public void readLongs (long[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(8) / 8);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;)
+				values[offset++] = (long)buffer[position++] << 56 | (long)(buffer[position++] & 0xFF) << 48
+					| (long)(buffer[position++] & 0xFF) << 40 | (long)(buffer[position++] & 0xFF) << 32
+					| (long)(buffer[position++] & 0xFF) << 24 | (buffer[position++] & 0xFF) << 16 | (buffer[position++] & 0xFF) << 8
+					| buffer[position++] & 0xFF;
+			count -= fit;
+		}
+	}
+
+	/** Reads 4 byte floats. */
+	public float[] readFloats (int length) throws KryoException {
+		float[] values = new float[length];
+		readFloats(values, 0, length);
+		return values;
+	}
+
+	/** Reads 4 byte floats. The buffer is checked once for as many values as it can hold. */
+	public void readFloats (float[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(4) / 4);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;)
+				values[offset++] = Float.intBitsToFloat((buffer[position++] & 0xFF) << 24 | (buffer[position++] & 0xFF) << 16
+					| (buffer[position++] & 0xFF) << 8 | buffer[position++] & 0xFF);
+			count -= fit;
+		}
+	}
+
+	/** Reads 8 byte doubles. */
+	public double[] readDoubles (int length) throws KryoException {
+		double[] values = new double[length];
+		readDoubles(values, 0, length);
+		return values;
+	}
+
+	/** Reads 8 byte doubles. The buffer is checked once for as many values as it can hold. */
+	public void readDoubles (double[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(8) / 8);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;)
+				values[offset++] = Double.longBitsToDouble((long)buffer[position++] << 56 | (long)(buffer[position++] & 0xFF) << 48
+					| (long)(buffer[position++] & 0xFF) << 40 | (long)(buffer[position++] & 0xFF) << 32
+					| (long)(buffer[position++] & 0xFF) << 24 | (buffer[position++] & 0xFF) << 16 | (buffer[position++] & 0xFF) << 8
+					| buffer[position++] & 0xFF);
+			count -= fit;
+		}
+	}
+
+	/** Reads 2 byte chars. */
+	public char[] readChars (int length) throws KryoException {
+		char[] values = new char[length];
+		readChars(values, 0, length);
+		return values;
+	}
+
+	/** Reads 2 byte chars. The buffer is checked once for as many values as it can hold. */
+	public void readChars (char[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, require(2) / 2);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;)
+				values[offset++] = (char)((buffer[position++] & 0xFF) << 8 | buffer[position++] & 0xFF);
+			count -= fit;
+		}
+	}
+
+	/** Reads 1-5 byte ints.
+	 * @see #readInt(boolean) */
+	public int[] readInts (int length, boolean optimizePositive) throws KryoException {
+		int[] values = new int[length];
+		readInts(values, 0, length, optimizePositive);
+		return values;
+	}
+
+	/** Reads 1-5 byte ints. The buffer is checked once for as many values as it is guaranteed to hold.
+	 * @see #readInt(boolean) */
+	public void readInts (int[] values, int offset, int count, boolean optimizePositive) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, (limit - position) / 5);
+			if (fit == 0) {
+				// Near the end of the buffer, read values individually so only the bytes needed are required.
+				values[offset++] = readInt(optimizePositive);
+				count--;
+				continue;
+			}
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				int b = buffer[position++];
+				int result = b & 0x7F;
+				for (int shift = 7; (b & 0x80) != 0 && shift < 35; shift += 7) {
+					b = buffer[position++];
+					result |= (b & 0x7F) << shift;
+				}
+				values[offset++] = optimizePositive ? result : ((result >>> 1) ^ -(result & 1));
+			}
+			count -= fit;
+		}
+	}
+
+	/** Reads 1-10 byte longs.
+	 * @see #readLong(boolean) */
+	public long[] readLongs (int length, boolean optimizePositive) throws KryoException {
+		long[] values = new long[length];
+		readLongs(values, 0, length, optimizePositive);
+		return values;
+	}
+
+	/** Reads 1-10 byte longs. The buffer is checked once for as many values as it is guaranteed to hold.
+	 * @see #readLong(boolean) */
+	public void readLongs (long[] values, int offset, int count, boolean optimizePositive) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			int fit = Math.min(count, (limit - position) / 10);
+			if (fit == 0) {
+				// Near the end of the buffer, read values individually so only the bytes needed are required.
+				values[offset++] = readLong(optimizePositive);
+				count--;
+				continue;
+			}
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				int b = buffer[position++];
+				long result = b & 0x7F;
+				for (int shift = 7; (b & 0x80) != 0 && shift < 70; shift += 7) {
+					b = buffer[position++];
+					result |= (long)(b & 0x7F) << shift;
+				}
+				if (!optimizePositive) result = (result >>> 1) ^ -(result & 1);
+				values[offset++] = result;
+			}
+			count -= fit;
+		}
+	}
 }
@@ -0,0 +1,178 @@
+
+package com.esotericsoftware.kryo.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/** An Input that reads a file through a memory mapped {@link ByteBuffer}. Bytes are read directly from the page cache rather than
+ * copied into a byte array. Files larger than the region size, which can be at most 2GB, are mapped one region at a time as they
+ * are read. Positions are relative to the start of the mapped range and can be set to any position with
+ * {@link #setPosition(long)}.
+ * <p>
+ * Several inputs can read the same mapping independently by creating them with {@link #MappedFileInput(MappedFileInput)}. */
+public class MappedFileInput extends ByteBufferInput {
+	static private final int DEFAULT_REGION_SIZE = 1 << 30;
+
+	private final FileChannel channel;
+	private final boolean ownsChannel;
+	private final long start, end;
+	private final int regionSize;
+	/** The position in the file of the first byte of the buffer. */
+	private long regionStart;
+
+	/** Maps the entire file. The file is closed by {@link #close()}. */
+	public MappedFileInput (File file) throws KryoException {
+		this(open(file), true, 0, -1, DEFAULT_REGION_SIZE);
+	}
+
+	/** Maps the specified range of the channel. The channel is not closed by {@link #close()}.
+	 * @param regionSize The number of bytes mapped at once. */
+	public MappedFileInput (FileChannel channel, long position, long size, int regionSize) throws KryoException {
+		this(channel, false, position, size, regionSize);
+	}
+
+	/** Creates an input that shares the mapping and the channel of the specified input and starts at its current position. The
+	 * inputs are read independently and are not thread safe. Only the specified input closes the channel. */
+	public MappedFileInput (MappedFileInput input) {
+		super(input.byteBuffer.duplicate());
+		channel = input.channel;
+		ownsChannel = false;
+		start = input.start;
+		end = input.end;
+		regionSize = input.regionSize;
+		regionStart = input.regionStart;
+	}
+
+	private MappedFileInput (FileChannel channel, boolean ownsChannel, long position, long size, int regionSize) {
+		super(mapFirst(channel, ownsChannel, position, size, regionSize));
+		this.channel = channel;
+		this.ownsChannel = ownsChannel;
+		this.regionSize = regionSize;
+		start = position;
+		end = position + (size == -1 ? size(channel) - position : size);
+		regionStart = position;
+	}
+
+	static private FileChannel open (File file) {
+		if (file == null) throw new IllegalArgumentException("file cannot be null.");
+		try {
+			return new RandomAccessFile(file, "r").getChannel();
+		} catch (IOException ex) {
+			throw new KryoException("Unable to open file: " + file, ex);
+		}
+	}
+
+	/** Validates the arguments and maps the first region. If this fails and the channel was opened by this input, it is closed. */
+	static private ByteBuffer mapFirst (FileChannel channel, boolean ownsChannel, long position, long size, int regionSize) {
+		if (channel == null) throw new IllegalArgumentException("channel cannot be null.");
+		try {
+			if (regionSize < 16) throw new IllegalArgumentException("regionSize must be >= 16: " + regionSize);
+			return map(channel, position, size == -1 ? size(channel) - position : size, regionSize);
+		} catch (RuntimeException ex) {
+			if (ownsChannel) {
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+				}
+			}
+			throw ex;
+		}
+	}
+
+	static private long size (FileChannel channel) {
+		try {
+			return channel.size();
+		} catch (IOException ex) {
+			throw new KryoException(ex);
+		}
+	}
+
+	static private ByteBuffer map (FileChannel channel, long position, long size, int regionSize) {
+		if (channel == null) throw new IllegalArgumentException("channel cannot be null.");
+		try {
+			return channel.map(MapMode.READ_ONLY, position, Math.min(size, regionSize));
+		} catch (IOException ex) {
+			throw new KryoException("Unable to map file region at: " + position, ex);
+		}
+	}
+
+	/** Maps the region starting at the specified position in the file. */
+	private void mapRegion (long position) {
+		setByteBuffer(map(channel, position, end - position, regionSize));
+		regionStart = position;
+	}
+
+	/** Returns the number of bytes in the mapped range. */
+	public long length () {
+		return end - start;
+	}
+
+	/** Returns the position relative to the start of the mapped range. */
+	public long longPosition () {
+		return regionStart + byteBuffer.position() - start;
+	}
+
+	/** Returns the position relative to the start of the mapped range. This overflows for ranges larger than 2GB.
+	 * @see #longPosition() */
+	public int position () {
+		return (int)longPosition();
+	}
+
+	/** Returns the number of bytes read since the start of the mapped range. This overflows for ranges larger than 2GB. */
+	public int total () {
+		return (int)longPosition();
+	}
+
+	public void setPosition (int position) {
+		setPosition((long)position);
+	}
+
+	/** Sets the position relative to the start of the mapped range. The region containing the position is mapped if necessary. */
+	public void setPosition (long position) {
+		if (position < 0 || position > end - start)
+			throw new IllegalArgumentException("position must be >= 0 and <= " + (end - start) + ": " + position);
+		long filePosition = start + position;
+		if (filePosition >= regionStart && filePosition <= regionStart + byteBuffer.limit())
+			byteBuffer.position((int)(filePosition - regionStart));
+		else
+			mapRegion(filePosition);
+	}
+
+	/** Sets the position to the start of the mapped range. */
+	public void rewind () {
+		setPosition(0L);
+	}
+
+	protected int require (int required) throws KryoException {
+		int remaining = byteBuffer.remaining();
+		if (remaining >= required) return remaining;
+		long position = regionStart + byteBuffer.position();
+		if (end - position < required) throw new KryoException("Buffer underflow.");
+		if (required > regionSize) throw new KryoException("Region too small: " + regionSize + ", required: " + required);
+		mapRegion(position);
+		return byteBuffer.remaining();
+	}
+
+	protected int optional (int optional) throws KryoException {
+		int remaining = byteBuffer.remaining();
+		if (remaining >= optional) return remaining;
+		long position = regionStart + byteBuffer.position();
+		if (position + remaining < end) mapRegion(position);
+		return byteBuffer.remaining();
+	}
+
+	/** Closes the file if this input opened it. */
+	public void close () throws KryoException {
+		if (!ownsChannel) return;
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+		}
+	}
+}
@@ -11,8 +11,8 @@ import com.esotericsoftware.kryo.KryoException;
  * @author Nathan Sweet <misc@n4te.com> */
 public class Output extends OutputStream {
 	private final int maxCapacity;
-	private int capacity, position, total;
-	private byte[] buffer;
+	protected int capacity, position, total;
+	protected byte[] buffer;
 	private OutputStream outputStream;
 	private char[] chars = new char[32];
 
@@ -99,8 +99,10 @@ public class Output extends OutputStream {
 		total = 0;
 	}
 
-	/** @return true if the buffer has been resized. */
-	private boolean require (int required) throws KryoException {
+	/** Called before writing to ensure the required number of bytes can be written at the position. Subclasses may override this
+	 * to replace the buffer, so the buffer must be retrieved again after calling this method.
+	 * @return true if the buffer has been resized or replaced. */
+	protected boolean require (int required) throws KryoException {
 		if (capacity - position >= required) return false;
 		if (required > maxCapacity)
 			throw new KryoException("Buffer overflow. Max capacity: " + maxCapacity + ", required: " + required);
@@ -235,6 +237,57 @@ public class Output extends OutputStream {
 		return length;
 	}
 
+	// reserved length
+
+	/** Reserves 5 bytes for a length that is written later by {@link #writeReservedLength(int, boolean)}. This allows the bytes that
+	 * follow to be skipped when reading, without first writing them to a temporary buffer to know their length. Reservations may
+	 * be nested, in which case the lengths must be written in the reverse order they were reserved.
+	 * @return The total number of bytes written before the reserved bytes, which identifies them to writeReservedLength. */
+	public int reserveLength () throws KryoException {
+		require(5);
+		int reserved = total();
+		position += 5;
+		return reserved;
+	}
+
+	/** Writes the number of bytes written since the reserved bytes into the reserved bytes. The length is read with
+	 * {@link Input#readInt(boolean) readInt(true)}.
+	 * @param reserved The value returned by {@link #reserveLength()}.
+	 * @param compact If true, the bytes written since the reserved bytes are moved back so the length uses only the bytes it needs.
+	 *           If false, the length is padded to use all 5 reserved bytes and no bytes are moved.
+	 * @return The length.
+	 * @throws KryoException if the reserved bytes have already been flushed. */
+	public int writeReservedLength (int reserved, boolean compact) throws KryoException {
+		int index = reserved - total;
+		if (index < 0) throw new KryoException("Reserved bytes have already been flushed: " + reserved);
+		int start = index + 5, length = position - start;
+		int count = compact ? lengthBytes(length) : 5;
+		writeLength(buffer, index, length, count);
+		if (count < 5) {
+			System.arraycopy(buffer, start, buffer, index + count, length);
+			position -= 5 - count;
+		}
+		return length;
+	}
+
+	/** Returns the number of bytes {@link #writeInt(int, boolean) writeInt(value, true)} writes. */
+	static int lengthBytes (int value) {
+		if ((value & ~0x7F) == 0) return 1;
+		if ((value >>> 7 & ~0x7F) == 0) return 2;
+		if ((value >>> 14 & ~0x7F) == 0) return 3;
+		if ((value >>> 21 & ~0x7F) == 0) return 4;
+		return 5;
+	}
+
+	/** Writes a variable length int using the specified number of bytes, which may be more than it needs. */
+	static void writeLength (byte[] buffer, int index, int value, int count) {
+		for (int i = 1; i < count; i++) {
+			buffer[index++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[index] = (byte)value;
+	}
+
 	// string
 
 	/** Writes the length and string using UTF8, or null.
@@ -507,4 +560,170 @@ public class Output extends OutputStream {
 	public int writeDouble (double value, double precision, boolean optimizePositive) throws KryoException {
 		return writeLong((long)(value * precision), optimizePositive);
 	}
+
+	// arrays
+
+	/** Writes 2 byte shorts. The capacity is checked once for as many values as fit in the buffer. */
+	public void writeShorts (short[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			if (capacity - position < 2) require(2);
+			int fit = Math.min(count, (capacity - position) / 2);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				short value = values[offset++];
+				buffer[position++] = (byte)(value >>> 8);
+				buffer[position++] = (byte)value;
+			}
+			count -= fit;
+		}
+	}
+
+	/** Writes 4 byte ints. The capacity is checked once for as many values as fit in the buffer. */
+	public void writeInts (int[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			if (capacity - position < 4) require(4);
+			int fit = Math.min(count, (capacity - position) / 4);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				int value = values[offset++];
+				buffer[position++] = (byte)(value >>> 24);
+				buffer[position++] = (byte)(value >>> 16);
+				buffer[position++] = (byte)(value >>> 8);
+				buffer[position++] = (byte)value;
+			}
+			count -= fit;
+		}
+	}
+
+	/** Writes 8 byte longs. The capacity is checked once for as many values as fit in the buffer. */
+	public void writeLongs (long[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			if (capacity - position < 8) require(8);
+			int fit = Math.min(count, (capacity - position) / 8);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				long value = values[offset++];
+				buffer[position++] = (byte)(value >>> 56);
+				buffer[position++] = (byte)(value >>> 48);
+				buffer[position++] = (byte)(value >>> 40);
+				buffer[position++] = (byte)(value >>> 32);
+				buffer[position++] = (byte)(value >>> 24);
+				buffer[position++] = (byte)(value >>> 16);
+				buffer[position++] = (byte)(value >>> 8);
+				buffer[position++] = (byte)value;
+			}
+			count -= fit;
+		}
+	}
+
+	/** Writes 4 byte floats. The capacity is checked once for as many values as fit in the buffer. */
+	public void writeFloats (float[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			if (capacity - position < 4) require(4);
+			int fit = Math.min(count, (capacity - position) / 4);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				int value = Float.floatToIntBits(values[offset++]);
+				buffer[position++] = (byte)(value >>> 24);
+				buffer[position++] = (byte)(value >>> 16);
+				buffer[position++] = (byte)(value >>> 8);
+				buffer[position++] = (byte)value;
+			}
+			count -= fit;
+		}
+	}
+
+	/** Writes 8 byte doubles. The capacity is checked once for as many values as fit in the buffer. */
+	public void writeDoubles (double[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			if (capacity - position < 8) require(8);
+			int fit = Math.min(count, (capacity - position) / 8);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				long value = Double.doubleToLongBits(values[offset++]);
+				buffer[position++] = (byte)(value >>> 56);
+				buffer[position++] = (byte)(value >>> 48);
+				buffer[position++] = (byte)(value >>> 40);
+				buffer[position++] = (byte)(value >>> 32);
+				buffer[position++] = (byte)(value >>> 24);
+				buffer[position++] = (byte)(value >>> 16);
+				buffer[position++] = (byte)(value >>> 8);
+				buffer[position++] = (byte)value;
+			}
+			count -= fit;
+		}
+	}
+
+	/** Writes 2 byte chars. The capacity is checked once for as many values as fit in the buffer. */
+	public void writeChars (char[] values, int offset, int count) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			if (capacity - position < 2) require(2);
+			int fit = Math.min(count, (capacity - position) / 2);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				char value = values[offset++];
+				buffer[position++] = (byte)(value >>> 8);
+				buffer[position++] = (byte)value;
+			}
+			count -= fit;
+		}
+	}
+
+	/** Writes 1-5 byte ints. The capacity is checked once for as many values as fit in the buffer.
+	 * @see #writeInt(int, boolean) */
+	public void writeInts (int[] values, int offset, int count, boolean optimizePositive) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			if (capacity - position < 5) {
+				// Near the end of the buffer, write values individually so only the bytes needed are required.
+				writeInt(values[offset++], optimizePositive);
+				count--;
+				continue;
+			}
+			int fit = Math.min(count, (capacity - position) / 5);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				int value = values[offset++];
+				if (!optimizePositive) value = (value << 1) ^ (value >> 31);
+				while ((value & ~0x7F) != 0) {
+					buffer[position++] = (byte)((value & 0x7F) | 0x80);
+					value >>>= 7;
+				}
+				buffer[position++] = (byte)value;
+			}
+			count -= fit;
+		}
+	}
+
+	/** Writes 1-10 byte longs. The capacity is checked once for as many values as fit in the buffer.
+	 * @see #writeLong(long, boolean) */
+	public void writeLongs (long[] values, int offset, int count, boolean optimizePositive) throws KryoException {
+		if (values == null) throw new IllegalArgumentException("values cannot be null.");
+		while (count > 0) {
+			if (capacity - position < 10) {
+				// Near the end of the buffer, write values individually so only the bytes needed are required.
+				writeLong(values[offset++], optimizePositive);
+				count--;
+				continue;
+			}
+			int fit = Math.min(count, (capacity - position) / 10);
+			byte[] buffer = this.buffer;
+			for (int n = offset + fit; offset < n;) {
+				long value = values[offset++];
+				if (!optimizePositive) value = (value << 1) ^ (value >> 63);
+				while ((value & ~0x7Fl) != 0) {
+					buffer[position++] = (byte)(((int)value & 0x7F) | 0x80);
+					value >>>= 7;
+				}
+				buffer[position++] = (byte)value;
+			}
+			count -= fit;
+		}
+	}
 }
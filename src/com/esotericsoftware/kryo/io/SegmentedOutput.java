@@ -0,0 +1,155 @@
+
+package com.esotericsoftware.kryo.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/** An Output that writes to a chain of byte array segments. When a segment is full, writing continues in another segment rather
+ * than growing the buffer and copying the bytes written so far. The bytes are copied once by {@link #toBytes()}, or not at all by
+ * {@link #writeTo(GatheringByteChannel)} and {@link #writeTo(OutputStream)}.
+ * <p>
+ * Segments are kept when the output is {@link #clear() cleared} and are reused for the next bytes written. */
+public class SegmentedOutput extends Output {
+	private final int segmentSize, maxSize;
+	private final ArrayList<byte[]> segments = new ArrayList();
+	/** The number of bytes written to each segment before the current segment. */
+	private int[] segmentCounts = new int[8];
+	private int segmentIndex;
+
+	/** Creates a new Output with no maximum size.
+	 * @param segmentSize The size of each segment. Larger segments are only allocated for a single write that is larger than this. */
+	public SegmentedOutput (int segmentSize) {
+		this(segmentSize, -1);
+	}
+
+	/** @param segmentSize The size of each segment. Larger segments are only allocated for a single write that is larger than this.
+	 * @param maxSize An exception is thrown if more than this many bytes are written. Can be -1 for no maximum. */
+	public SegmentedOutput (int segmentSize, int maxSize) {
+		super(segmentSize, segmentSize);
+		if (segmentSize < 1) throw new IllegalArgumentException("segmentSize must be > 0: " + segmentSize);
+		this.segmentSize = segmentSize;
+		this.maxSize = maxSize == -1 ? Integer.MAX_VALUE : maxSize;
+		segments.add(buffer);
+	}
+
+	/** Returns null, a SegmentedOutput does not write to an OutputStream.
+	 * @see #writeTo(OutputStream) */
+	public OutputStream getOutputStream () {
+		return null;
+	}
+
+	/** @throws UnsupportedOperationException A SegmentedOutput does not write to an OutputStream.
+	 * @see #writeTo(OutputStream) */
+	public void setOutputStream (OutputStream outputStream) {
+		throw new UnsupportedOperationException("A SegmentedOutput does not write to an OutputStream.");
+	}
+
+	/** Returns the current segment. As for any Output, the bytes in it are from 0 to {@link #position()}, and {@link #total()}
+	 * returns the number of bytes written to all segments. */
+	public byte[] getBuffer () {
+		return buffer;
+	}
+
+	/** Returns the number of segments that contain bytes written. */
+	public int getSegmentCount () {
+		return segmentIndex + 1;
+	}
+
+	/** Returns a new byte array containing all the bytes written. */
+	public byte[] toBytes () {
+		byte[] bytes = new byte[total()];
+		int offset = 0;
+		for (int i = 0; i < segmentIndex; i++) {
+			int count = segmentCounts[i];
+			System.arraycopy(segments.get(i), 0, bytes, offset, count);
+			offset += count;
+		}
+		System.arraycopy(buffer, 0, bytes, offset, position);
+		return bytes;
+	}
+
+	/** Sets the position and total to zero. The segments are kept for reuse. */
+	public void clear () {
+		super.clear();
+		segmentIndex = 0;
+		buffer = segments.get(0);
+		capacity = buffer.length;
+	}
+
+	/** Starts a new segment if the current segment does not have the required number of bytes remaining.
+	 * @return true if the segment was changed. */
+	protected boolean require (int required) throws KryoException {
+		if (capacity - position >= required) return false;
+		if (required > maxSize - total())
+			throw new KryoException("Buffer overflow. Max size: " + maxSize + ", required: " + ((long)total() + required));
+		if (segmentIndex == segmentCounts.length) {
+			int[] newCounts = new int[segmentIndex * 2];
+			System.arraycopy(segmentCounts, 0, newCounts, 0, segmentIndex);
+			segmentCounts = newCounts;
+		}
+		segmentCounts[segmentIndex++] = position;
+		total += position;
+		position = 0;
+		byte[] segment = segmentIndex < segments.size() ? segments.get(segmentIndex) : null;
+		if (segment == null || segment.length < required) {
+			segment = new byte[Math.max(segmentSize, required)];
+			if (segmentIndex < segments.size())
+				segments.set(segmentIndex, segment);
+			else
+				segments.add(segment);
+		}
+		buffer = segment;
+		capacity = segment.length;
+		return true;
+	}
+
+	/** If the reserved bytes are in an earlier segment, the length is always padded to 5 bytes rather than moving bytes between
+	 * segments. */
+	public int writeReservedLength (int reserved, boolean compact) throws KryoException {
+		if (reserved >= total) return super.writeReservedLength(reserved, compact);
+		int segmentStart = 0, i = 0;
+		while (segmentStart + segmentCounts[i] <= reserved)
+			segmentStart += segmentCounts[i++];
+		int length = total() - reserved - 5;
+		writeLength(segments.get(i), reserved - segmentStart, length, 5);
+		return length;
+	}
+
+	/** Writes all the bytes written so far to the channel without copying them. The channel must be in blocking mode. The bytes are
+	 * kept until the output is cleared. */
+	public void writeTo (GatheringByteChannel channel) throws KryoException {
+		if (channel == null) throw new IllegalArgumentException("channel cannot be null.");
+		ByteBuffer[] buffers = new ByteBuffer[segmentIndex + 1];
+		for (int i = 0; i < segmentIndex; i++)
+			buffers[i] = ByteBuffer.wrap(segments.get(i), 0, segmentCounts[i]);
+		buffers[segmentIndex] = ByteBuffer.wrap(buffer, 0, position);
+		try {
+			long remaining = total();
+			int first = 0;
+			while (remaining > 0) {
+				remaining -= channel.write(buffers, first, buffers.length - first);
+				while (first < buffers.length && !buffers[first].hasRemaining())
+					first++;
+			}
+		} catch (IOException ex) {
+			throw new KryoException(ex);
+		}
+	}
+
+	/** Writes all the bytes written so far to the stream without copying them. The bytes are kept until the output is cleared. */
+	public void writeTo (OutputStream outputStream) throws KryoException {
+		if (outputStream == null) throw new IllegalArgumentException("outputStream cannot be null.");
+		try {
+			for (int i = 0; i < segmentIndex; i++)
+				outputStream.write(segments.get(i), 0, segmentCounts[i]);
+			outputStream.write(buffer, 0, position);
+		} catch (IOException ex) {
+			throw new KryoException(ex);
+		}
+	}
+}
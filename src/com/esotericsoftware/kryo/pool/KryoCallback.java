@@ -0,0 +1,10 @@
+package com.esotericsoftware.kryo.pool;
+
+import com.esotericsoftware.kryo.Kryo;
+
+/** Performs work with a {@link Kryo} instance borrowed from a {@link KryoPool}.
+ * @see KryoPool#run(KryoCallback) */
+public interface KryoCallback<T> {
+	/** @param kryo Only valid for the duration of this call and must not be retained. */
+	public T execute (Kryo kryo);
+}
@@ -0,0 +1,10 @@
+package com.esotericsoftware.kryo.pool;
+
+import com.esotericsoftware.kryo.Kryo;
+
+/** Creates and configures new {@link Kryo} instances for a {@link KryoPool}. */
+public interface KryoFactory {
+	/** Returns a new Kryo instance with all registrations and settings applied. This may be called concurrently by multiple
+	 * threads. */
+	public Kryo create ();
+}
@@ -0,0 +1,102 @@
+package com.esotericsoftware.kryo.pool;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.esotericsoftware.kryo.Kryo;
+
+/** A thread safe pool of {@link Kryo} instances. Kryo is not thread safe, so each thread must use its own instance. Rather than
+ * creating and configuring a new instance per thread, instances are borrowed from the pool, used, and returned. New instances
+ * are only created when the pool is empty, so registration and serializer setup is done once per instance rather than once per
+ * thread.
+ * <p>
+ * Idle instances can optionally be held with {@link SoftReference soft references}, allowing them to be garbage collected when
+ * memory is low, and the number of idle instances can be limited.
+ * <p>
+ * Instances with {@link Kryo#setSession(boolean) session mode} enabled keep state for the stream they are used with, so they
+ * should not be pooled unless each borrower uses the same stream. */
+public class KryoPool {
+	private final KryoFactory factory;
+	private final boolean softReferences;
+	private final int maxIdle;
+	private final Queue queue = new ConcurrentLinkedQueue();
+	private final ReferenceQueue<Kryo> clearedQueue;
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	/** Creates a pool that holds any number of idle instances with strong references. */
+	public KryoPool (KryoFactory factory) {
+		this(factory, false, Integer.MAX_VALUE);
+	}
+
+	/** @param softReferences If true, idle instances are held with soft references and may be garbage collected when memory is low.
+	 * @param maxIdle The maximum number of idle instances kept by the pool. Instances released when the pool is full are discarded.
+	 *           Use {@link Integer#MAX_VALUE} for no limit. */
+	public KryoPool (KryoFactory factory, boolean softReferences, int maxIdle) {
+		if (factory == null) throw new IllegalArgumentException("factory cannot be null.");
+		if (maxIdle < 0) throw new IllegalArgumentException("maxIdle must be >= 0: " + maxIdle);
+		this.factory = factory;
+		this.softReferences = softReferences;
+		this.maxIdle = maxIdle;
+		clearedQueue = softReferences ? new ReferenceQueue() : null;
+	}
+
+	/** Returns an idle instance, or a new instance from the {@link KryoFactory} if there are no idle instances. The instance must be
+	 * returned to the pool with {@link #release(Kryo)} when it is no longer needed. */
+	public Kryo borrow () {
+		while (true) {
+			Object entry = queue.poll();
+			if (entry == null) return factory.create();
+			idleCount.decrementAndGet();
+			if (!softReferences) return (Kryo)entry;
+			Kryo kryo = ((SoftReference<Kryo>)entry).get();
+			if (kryo != null) return kryo;
+		}
+	}
+
+	/** Returns an instance to the pool. The instance must not be used after it has been released. If the pool already holds the
+	 * maximum number of idle instances, the instance is discarded. */
+	public void release (Kryo kryo) {
+		if (kryo == null) throw new IllegalArgumentException("kryo cannot be null.");
+		if (softReferences) removeCleared();
+		if (idleCount.incrementAndGet() > maxIdle) {
+			idleCount.decrementAndGet();
+			return;
+		}
+		queue.offer(softReferences ? new SoftReference(kryo, clearedQueue) : kryo);
+	}
+
+	/** Borrows an instance, executes the callback, and releases the instance, even if the callback throws an exception.
+	 * @return The value returned by the callback. */
+	public <T> T run (KryoCallback<T> callback) {
+		if (callback == null) throw new IllegalArgumentException("callback cannot be null.");
+		Kryo kryo = borrow();
+		try {
+			return callback.execute(kryo);
+		} finally {
+			release(kryo);
+		}
+	}
+
+	/** Discards all idle instances. */
+	public void clear () {
+		while (queue.poll() != null)
+			idleCount.decrementAndGet();
+	}
+
+	/** Returns the number of idle instances in the pool. When soft references are used, this may include instances that have been
+	 * garbage collected but not yet removed. */
+	public int getIdleCount () {
+		return idleCount.get();
+	}
+
+	/** Removes soft references that have been cleared by the garbage collector so they don't count toward the idle limit. */
+	private void removeCleared () {
+		Reference reference;
+		while ((reference = clearedQueue.poll()) != null)
+			if (queue.remove(reference)) idleCount.decrementAndGet();
+	}
+}
@@ -12,14 +12,15 @@ import com.esotericsoftware.kryo.io.Output;
 /** Serializes arrays.
  * <p>
  * With the default constructor, an array requires a header of 2-4 bytes plus 2 bytes for each dimension beyond the first. If the
- * array type is not final then an extra byte is written for each element.
+ * array type is not final then an extra byte is written for each element. ArraySerializer does not store state while reading or
+ * writing, so an instance can be shared by multiple Kryo instances once it is configured.
  * @see Kryo#register(Class, Serializer)
  * @author Nathan Sweet <misc@n4te.com> */
 public class ArraySerializer extends Serializer {
 	private Integer fixedDimensionCount;
 	private boolean elementsAreSameType;
 	private boolean elementsCanBeNull = true;
-	private int[] dimensions, tempDimensions;
+	private int[] dimensions;
 
 	/** @param dimensions The number of dimensions. Saves 1 byte. Set to null to determine the number of dimensions (default). */
 	public void setDimensionCount (Integer dimensions) {
@@ -53,11 +54,14 @@ public class ArraySerializer extends Serializer {
 	public void write (Kryo kryo, Output output, Object array) {
 		// Write dimensions.
 		int[] dimensions = this.dimensions;
-		if (dimensions == null) {
-			dimensions = getDimensions(array);
-			if (fixedDimensionCount == null) output.writeByte(dimensions.length);
-			for (int i = 0, n = dimensions.length; i < n; i++)
-				output.writeInt(dimensions[i], true);
+		int dimensionCount;
+		if (dimensions != null)
+			dimensionCount = dimensions.length;
+		else {
+			dimensionCount = getDimensionCount(array.getClass());
+			if (fixedDimensionCount == null) output.writeByte(dimensionCount);
+			for (int i = 0; i < dimensionCount; i++)
+				output.writeInt(getMaxLength(array, i), true);
 		}
 		// If element class is final (this includes primitives) then all elements are the same type.
 		Serializer elementSerializer = null;
@@ -65,50 +69,103 @@ public class ArraySerializer extends Serializer {
 		boolean elementsCanBeNull = this.elementsCanBeNull && !elementClass.isPrimitive();
 		if (elementsAreSameType || Modifier.isFinal(elementClass.getModifiers()))
 			elementSerializer = kryo.getRegistration(elementClass).getSerializer();
+		// Primitives written by their default serializer are written a row at a time.
+		boolean bulk = elementClass.isPrimitive() && PrimitiveFields.isDefault(kryo, elementClass, elementSerializer);
 		// Write array data.
-		writeArray(kryo, output, array, elementSerializer, 0, dimensions.length, elementsCanBeNull);
+		writeArray(kryo, output, array, elementSerializer, 0, dimensionCount, elementsCanBeNull, bulk);
+	}
+
+	/** Returns the largest length of the arrays at the specified dimension, without allocating. With Java's "jagged arrays" the
+	 * lengths at a dimension can differ. */
+	static private int getMaxLength (Object array, int dimension) {
+		if (dimension == 0) return Array.getLength(array);
+		int max = 0;
+		Object[] arrays = (Object[])array;
+		for (int i = 0, n = arrays.length; i < n; i++) {
+			Object element = arrays[i];
+			if (element != null) max = Math.max(max, getMaxLength(element, dimension - 1));
+		}
+		return max;
 	}
 
 	private void writeArray (Kryo kryo, Output output, Object array, Serializer elementSerializer, int dimension,
-		int dimensionCount, boolean elementsCanBeNull) {
+		int dimensionCount, boolean elementsCanBeNull, boolean bulk) {
 		int length = Array.getLength(array);
 		if (dimension > 0) {
 			// Write array length. With Java's "jagged arrays" this could be less than the dimension size.
 			output.writeInt(length + 1, true);
 		}
 		// Write array data.
-		boolean elementsAreArrays = dimension < dimensionCount - 1;
-		for (int i = 0; i < length; i++) {
-			Object element = Array.get(array, i);
-			if (elementsAreArrays) {
-				// Nested array.
+		if (dimension < dimensionCount - 1) {
+			// Nested arrays.
+			Object[] arrays = (Object[])array;
+			for (int i = 0; i < length; i++) {
+				Object element = arrays[i];
 				if (element != null)
-					writeArray(kryo, output, element, elementSerializer, dimension + 1, dimensionCount, elementsCanBeNull);
+					writeArray(kryo, output, element, elementSerializer, dimension + 1, dimensionCount, elementsCanBeNull, bulk);
 				else
 					output.writeInt(0, true);
-			} else if (elementSerializer != null) {
-				// Use same serializer for all elements.
-				if (elementsCanBeNull)
-					kryo.writeObjectOrNull(output, element, elementSerializer);
-				else
-					kryo.writeObject(output, element, elementSerializer);
-			} else {
-				// Each element could be a different type. Store the class with the object.
-				kryo.writeClassAndObject(output, element);
 			}
+		} else if (bulk)
+			writePrimitives(output, array, length);
+		else if (array instanceof Object[]) {
+			Object[] elements = (Object[])array;
+			for (int i = 0; i < length; i++)
+				writeElement(kryo, output, elements[i], elementSerializer, elementsCanBeNull);
+		} else {
+			for (int i = 0; i < length; i++)
+				writeElement(kryo, output, Array.get(array, i), elementSerializer, elementsCanBeNull);
+		}
+	}
+
+	private void writeElement (Kryo kryo, Output output, Object element, Serializer elementSerializer, boolean elementsCanBeNull) {
+		if (elementSerializer != null) {
+			// Use same serializer for all elements.
+			if (elementsCanBeNull)
+				kryo.writeObjectOrNull(output, element, elementSerializer);
+			else
+				kryo.writeObject(output, element, elementSerializer);
+		} else {
+			// Each element could be a different type. Store the class with the object.
+			kryo.writeClassAndObject(output, element);
+		}
+	}
+
+	/** Writes the same bytes as the default serializers for the primitive type, for all the elements at once. */
+	static private void writePrimitives (Output output, Object array, int length) {
+		Class type = array.getClass().getComponentType();
+		if (type == int.class)
+			output.writeInts((int[])array, 0, length, false);
+		else if (type == long.class)
+			output.writeLongs((long[])array, 0, length, false);
+		else if (type == float.class)
+			output.writeFloats((float[])array, 0, length);
+		else if (type == double.class)
+			output.writeDoubles((double[])array, 0, length);
+		else if (type == byte.class)
+			output.writeBytes((byte[])array, 0, length);
+		else if (type == char.class)
+			output.writeChars((char[])array, 0, length);
+		else if (type == short.class)
+			output.writeShorts((short[])array, 0, length);
+		else {
+			boolean[] values = (boolean[])array;
+			for (int i = 0; i < length; i++)
+				output.writeBoolean(values[i]);
 		}
 	}
 
 	public Object create (Kryo kryo, Input input, Class type) {
 		// Get dimensions.
-		tempDimensions = this.dimensions;
-		if (tempDimensions == null) {
+		int[] dimensions = this.dimensions;
+		if (dimensions == null) {
 			int dimensionCount = fixedDimensionCount != null ? fixedDimensionCount : input.readByteUnsigned();
-			tempDimensions = new int[dimensionCount];
+			if (dimensionCount == 1) return Array.newInstance(getElementClass(type), input.readInt(true));
+			dimensions = new int[dimensionCount];
 			for (int i = 0; i < dimensionCount; i++)
-				tempDimensions[i] = input.readInt(true);
+				dimensions[i] = input.readInt(true);
 		}
-		return Array.newInstance(getElementClass(type), tempDimensions);
+		return Array.newInstance(getElementClass(type), dimensions);
 	}
 
 	public void read (Kryo kryo, Input input, Object array) {
@@ -118,42 +175,77 @@ public class ArraySerializer extends Serializer {
 		boolean elementsCanBeNull = this.elementsCanBeNull && !elementClass.isPrimitive();
 		if (elementsAreSameType || Modifier.isFinal(elementClass.getModifiers()))
 			elementSerializer = kryo.getRegistration(elementClass).getSerializer();
-		readArray(kryo, input, array, tempDimensions[0], elementSerializer, elementClass, 0, tempDimensions, elementsCanBeNull);
+		boolean bulk = elementClass.isPrimitive() && PrimitiveFields.isDefault(kryo, elementClass, elementSerializer);
+		int dimensionCount = getDimensionCount(array.getClass());
+		readArray(kryo, input, array, elementSerializer, elementClass, 0, dimensionCount, elementsCanBeNull, bulk);
 	}
 
-	private void readArray (Kryo kryo, Input input, Object array, int length, Serializer elementSerializer, Class elementClass,
-		int dimension, int[] dimensions, boolean elementsCanBeNull) {
-		boolean elementsAreArrays = dimension < dimensions.length - 1;
-		for (int i = 0; i < length; i++) {
-			if (elementsAreArrays) {
-				// Nested array.
+	private void readArray (Kryo kryo, Input input, Object array, Serializer elementSerializer, Class elementClass, int dimension,
+		int dimensionCount, boolean elementsCanBeNull, boolean bulk) {
+		int length = Array.getLength(array);
+		if (dimension < dimensionCount - 1) {
+			// Nested arrays. The array from create is rectangular, its nested arrays are replaced if the length read differs.
+			Object[] arrays = (Object[])array;
+			Class nestedElementClass = array.getClass().getComponentType().getComponentType();
+			for (int i = 0; i < length; i++) {
 				int nestedLength = input.readInt(true) - 1;
 				if (nestedLength == -1)
-					Array.set(array, i, null);
+					arrays[i] = null;
 				else {
-					Object element = Array.get(array, i);
-					int nestedDimension = dimension + 1;
-					if (nestedLength != dimensions[nestedDimension]) {
-						// Nested array length is different from the dimensions.
-						int[] nestedDimensions = new int[dimensions.length - nestedDimension];
-						System.arraycopy(dimensions, nestedDimension, nestedDimensions, 0, nestedDimensions.length);
-						nestedDimensions[0] = nestedLength;
-						element = Array.newInstance(elementClass, nestedDimensions);
-						Array.set(array, i, element);
+					Object element = arrays[i];
+					if (element == null || Array.getLength(element) != nestedLength) {
+						// Any arrays nested in the new array are created when their lengths are read.
+						element = Array.newInstance(nestedElementClass, nestedLength);
+						arrays[i] = element;
 					}
-					readArray(kryo, input, element, nestedLength, elementSerializer, elementClass, dimension + 1, dimensions,
-						elementsCanBeNull);
+					readArray(kryo, input, element, elementSerializer, elementClass, dimension + 1, dimensionCount, elementsCanBeNull,
+						bulk);
 				}
-			} else if (elementSerializer != null) {
-				// Use same serializer (and class) for all elements.
-				if (elementsCanBeNull)
-					Array.set(array, i, kryo.readObjectOrNull(input, elementClass, elementSerializer));
-				else
-					Array.set(array, i, kryo.readObject(input, elementClass, elementSerializer));
-			} else {
-				// Each element could be a different type. Look up the class with the object.
-				Array.set(array, i, kryo.readClassAndObject(input));
 			}
+		} else if (bulk)
+			readPrimitives(input, array, length);
+		else if (array instanceof Object[]) {
+			Object[] elements = (Object[])array;
+			for (int i = 0; i < length; i++)
+				elements[i] = readElement(kryo, input, elementSerializer, elementClass, elementsCanBeNull);
+		} else {
+			for (int i = 0; i < length; i++)
+				Array.set(array, i, readElement(kryo, input, elementSerializer, elementClass, elementsCanBeNull));
+		}
+	}
+
+	private Object readElement (Kryo kryo, Input input, Serializer elementSerializer, Class elementClass,
+		boolean elementsCanBeNull) {
+		if (elementSerializer != null) {
+			// Use same serializer (and class) for all elements.
+			if (elementsCanBeNull) return kryo.readObjectOrNull(input, elementClass, elementSerializer);
+			return kryo.readObject(input, elementClass, elementSerializer);
+		}
+		// Each element could be a different type. Look up the class with the object.
+		return kryo.readClassAndObject(input);
+	}
+
+	/** Reads the bytes written by {@link #writePrimitives(Output, Object, int)}. */
+	static private void readPrimitives (Input input, Object array, int length) {
+		Class type = array.getClass().getComponentType();
+		if (type == int.class)
+			input.readInts((int[])array, 0, length, false);
+		else if (type == long.class)
+			input.readLongs((long[])array, 0, length, false);
+		else if (type == float.class)
+			input.readFloats((float[])array, 0, length);
+		else if (type == double.class)
+			input.readDoubles((double[])array, 0, length);
+		else if (type == byte.class)
+			input.readBytes((byte[])array, 0, length);
+		else if (type == char.class)
+			input.readChars((char[])array, 0, length);
+		else if (type == short.class)
+			input.readShorts((short[])array, 0, length);
+		else {
+			boolean[] values = (boolean[])array;
+			for (int i = 0; i < length; i++)
+				values[i] = input.readBoolean();
 		}
 	}
 
@@ -182,8 +274,9 @@ public class ArraySerializer extends Serializer {
 
 	static private void collectDimensions (Object array, int dimension, int[] dimensions) {
 		boolean elementsAreArrays = dimension < dimensions.length - 1;
-		for (int i = 0, s = Array.getLength(array); i < s; i++) {
-			Object element = Array.get(array, i);
+		Object[] arrays = (Object[])array;
+		for (int i = 0, s = arrays.length; i < s; i++) {
+			Object element = arrays[i];
 			if (element == null) continue;
 			dimensions[dimension] = Math.max(dimensions[dimension], Array.getLength(element));
 			if (elementsAreArrays) collectDimensions(element, dimension + 1, dimensions);
@@ -71,6 +71,7 @@ public class BeanSerializer extends Serializer {
 			cachedProperty.getMethod = getMethod;
 			cachedProperty.setMethod = setMethod;
 			cachedProperty.serializer = serializer;
+			cachedProperty.valueClass = returnType;
 			cachedProperty.setMethodType = setMethod.getParameterTypes()[0];
 			cachedProperties.add(cachedProperty);
 		}
@@ -96,7 +97,7 @@ public class BeanSerializer extends Serializer {
 			try {
 				if (TRACE) trace("kryo", "Write property: " + property + " (" + type.getName() + ")");
 				Object value = property.get(object);
-				Serializer serializer = property.serializer;
+				Serializer serializer = property.getSerializer(kryo);
 				if (serializer != null)
 					kryo.writeObjectOrNull(output, value, serializer);
 				else
@@ -122,7 +123,7 @@ public class BeanSerializer extends Serializer {
 			try {
 				if (TRACE) trace("kryo", "Read property: " + property + " (" + object.getClass() + ")");
 				Object value;
-				Serializer serializer = property.serializer;
+				Serializer serializer = property.getSerializer(kryo);
 				if (serializer != null)
 					value = kryo.readObjectOrNull(input, property.setMethodType, serializer);
 				else
@@ -146,7 +147,7 @@ public class BeanSerializer extends Serializer {
 	class CachedProperty {
 		String name;
 		Method getMethod, setMethod;
-		Class setMethodType;
+		Class setMethodType, valueClass;
 		Serializer serializer;
 		int getterAccessIndex, setterAccessIndex;
 
@@ -154,6 +155,14 @@ public class BeanSerializer extends Serializer {
 			return name;
 		}
 
+		/** Returns the serializer for the property's final class, or null. The serializer looked up when this serializer was created
+		 * is only used by the same Kryo, other Kryo instances sharing this serializer through a {@link Kryo#Kryo(Kryo) registry}
+		 * may have registered a different serializer. */
+		Serializer getSerializer (Kryo kryo) {
+			if (serializer == null || kryo == BeanSerializer.this.kryo) return serializer;
+			return kryo.getSerializer(valueClass);
+		}
+
 		Object get (Object object) throws IllegalAccessException, InvocationTargetException {
 			if (access != null) return ((MethodAccess)access).invoke(object, getterAccessIndex);
 			return getMethod.invoke(object, noArgs);
@@ -18,7 +18,7 @@ import com.esotericsoftware.kryo.io.Output;
  * @author Nathan Sweet <misc@n4te.com> */
 public class BlowfishSerializer extends Serializer {
 	private final Serializer serializer;
-	static private SecretKeySpec keySpec;
+	private final SecretKeySpec keySpec;
 
 	public BlowfishSerializer (Serializer serializer, byte[] key) {
 		this.serializer = serializer;
@@ -48,7 +48,7 @@ public class BlowfishSerializer extends Serializer {
 		return kryo.readObject(new Input(cipherInput, 256), type, serializer);
 	}
 
-	static private Cipher getCipher (int mode) {
+	private Cipher getCipher (int mode) {
 		try {
 			Cipher cipher = Cipher.getInstance("Blowfish");
 			cipher.init(mode, keySpec);
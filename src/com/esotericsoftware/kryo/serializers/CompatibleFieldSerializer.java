@@ -39,6 +39,10 @@ public class CompatibleFieldSerializer extends Serializer {
 	private CachedField[] fields;
 	Object access;
 	private boolean fieldsCanBeNull = true, setFieldsAsAccessible = true;
+	/** Incremented when the fields change, which discards the {@link KryoState} of every Kryo. */
+	private volatile int fieldsVersion;
+	/** The state for the Kryo this serializer was created with. */
+	private KryoState ownerState;
 
 	public CompatibleFieldSerializer (Kryo kryo, Class type) {
 		this.kryo = kryo;
@@ -49,6 +53,7 @@ public class CompatibleFieldSerializer extends Serializer {
 	private void rebuildCachedFields () {
 		if (type.isInterface()) {
 			fields = new CachedField[0]; // No fields to serialize.
+			fieldsVersion++;
 			return;
 		}
 
@@ -93,6 +98,7 @@ public class CompatibleFieldSerializer extends Serializer {
 
 			CachedField cachedField = new CachedField();
 			cachedField.field = field;
+			cachedField.offset = UnsafeFields.offset(field);
 			if (fieldsCanBeNull)
 				cachedField.canBeNull = !fieldClass.isPrimitive() && !field.isAnnotationPresent(NotNull.class);
 			else
@@ -121,6 +127,7 @@ public class CompatibleFieldSerializer extends Serializer {
 		fields = new CachedField[fieldCount];
 		for (int i = 0; i < fieldCount; i++)
 			fields[i] = cachedFields.poll();
+		fieldsVersion++;
 	}
 
 	/** Sets the default value for {@link CachedField#setCanBeNull(boolean)}.
@@ -139,10 +146,35 @@ public class CompatibleFieldSerializer extends Serializer {
 		rebuildCachedFields();
 	}
 
+	/** Returns the state for the Kryo, creating it the first time the Kryo uses this serializer after the fields have changed. The
+	 * state for the Kryo this serializer was created with is kept by this serializer, the state for other Kryo instances sharing
+	 * this serializer through a {@link Kryo#Kryo(Kryo) registry} is kept in their {@link Kryo#getContext() context}. */
+	private KryoState getState (Kryo kryo) {
+		boolean owner = kryo == this.kryo;
+		KryoState state = owner ? ownerState : (KryoState)kryo.getContext().get(this);
+		int fieldsVersion = this.fieldsVersion;
+		if (state != null && state.fieldsVersion == fieldsVersion) return state;
+
+		CachedField[] fields = this.fields;
+		state = new KryoState(fieldsVersion, fields);
+		for (int i = 0, n = fields.length; i < n; i++) {
+			CachedField cachedField = fields[i];
+			state.kinds[i] = PrimitiveFields.kind(kryo, cachedField.field, cachedField.fieldClass, cachedField.serializer,
+				cachedField.canBeNull);
+		}
+		if (owner)
+			ownerState = state;
+		else
+			kryo.getContext().put(this, state);
+		return state;
+	}
+
 	public void write (Kryo kryo, Output output, Object object) {
+		KryoState state = getState(kryo);
+		CachedField[] fields = state.fields;
 		ObjectMap context = kryo.getGraphContext();
-		if (!context.containsKey("schemaWritten")) {
-			context.put("schemaWritten", null);
+		if (!context.containsKey(this)) {
+			context.put(this, null);
 			if (TRACE) trace("kryo", "Write " + fields.length + " field names.");
 			output.writeInt(fields.length, true);
 			for (int i = 0, n = fields.length; i < n; i++)
@@ -155,6 +187,13 @@ public class CompatibleFieldSerializer extends Serializer {
 			try {
 				if (TRACE) trace("kryo", "Write field: " + cachedField + " (" + object.getClass().getName() + ")");
 
+				int kind = state.kinds[i];
+				if (kind != PrimitiveFields.NONE) {
+					PrimitiveFields.write(outputChunked, object, cachedField.field, cachedField.offset, kind);
+					outputChunked.endChunks();
+					continue;
+				}
+
 				Object value = cachedField.get(object);
 				if (value == null) {
 					kryo.writeClass(outputChunked, null);
@@ -168,8 +207,10 @@ public class CompatibleFieldSerializer extends Serializer {
 					if (serializer == null) serializer = registration.getSerializer();
 					kryo.writeObject(outputChunked, value, serializer);
 				} else {
-					if (serializer == null)
-						cachedField.serializer = serializer = kryo.getRegistration(cachedField.fieldClass).getSerializer();
+					if (serializer == null) {
+						serializer = state.serializers[i];
+						if (serializer == null) state.serializers[i] = serializer = kryo.getSerializer(cachedField.fieldClass);
+					}
 					if (!cachedField.canBeNull)
 						kryo.writeObject(outputChunked, value, serializer);
 					else
@@ -191,43 +232,53 @@ public class CompatibleFieldSerializer extends Serializer {
 	}
 
 	public void read (Kryo kryo, Input input, Object object) {
+		KryoState state = getState(kryo);
 		ObjectMap context = kryo.getGraphContext();
-		CachedField[] fields = (CachedField[])context.get("schema");
-		if (fields == null) {
+		// The index in the state's fields of each field in the schema, or -1 for obsolete fields.
+		int[] schema = (int[])context.get(this);
+		if (schema == null) {
 			int length = input.readInt(true);
 			if (TRACE) trace("kryo", "Read " + length + " field names.");
 			String[] names = new String[length];
 			for (int i = 0; i < length; i++)
 				names[i] = input.readString();
 
-			fields = new CachedField[length];
-			CachedField[] allFields = this.fields;
+			schema = new int[length];
+			CachedField[] allFields = state.fields;
 			outer:
 			for (int i = 0, n = names.length; i < n; i++) {
 				String schemaName = names[i];
 				for (int ii = 0, nn = allFields.length; ii < nn; ii++) {
 					if (allFields[ii].field.getName().equals(schemaName)) {
-						fields[i] = allFields[ii];
+						schema[i] = ii;
 						continue outer;
 					}
 				}
+				schema[i] = -1;
 				if (TRACE) trace("kryo", "Ignore obsolete field: " + schemaName);
 			}
-			context.put("schema", fields);
+			context.put(this, schema);
 		}
 
 		InputChunked inputChunked = new InputChunked(input, 1024);
-		for (int i = 0, n = fields.length; i < n; i++) {
-			CachedField cachedField = fields[i];
+		for (int i = 0, n = schema.length; i < n; i++) {
+			int index = schema[i];
+			if (index == -1) {
+				if (TRACE) trace("kryo", "Skip obsolete field.");
+				inputChunked.nextChunks();
+				continue;
+			}
+			CachedField cachedField = state.fields[index];
 			try {
-				if (cachedField == null) {
-					if (TRACE) trace("kryo", "Skip obsolete field.");
+				if (TRACE) trace("kryo", "Read field: " + cachedField + " (" + type.getName() + ")");
+
+				int kind = state.kinds[index];
+				if (kind != PrimitiveFields.NONE) {
+					PrimitiveFields.read(inputChunked, object, cachedField.field, cachedField.offset, kind);
 					inputChunked.nextChunks();
 					continue;
 				}
 
-				if (TRACE) trace("kryo", "Read field: " + cachedField + " (" + type.getName() + ")");
-
 				Object value;
 
 				Class concreteType = cachedField.fieldClass;
@@ -242,7 +293,10 @@ public class CompatibleFieldSerializer extends Serializer {
 						value = kryo.readObject(inputChunked, concreteType, serializer);
 					}
 				} else {
-					if (serializer == null) cachedField.serializer = serializer = kryo.getRegistration(concreteType).getSerializer();
+					if (serializer == null) {
+						serializer = state.serializers[index];
+						if (serializer == null) state.serializers[index] = serializer = kryo.getSerializer(concreteType);
+					}
 					if (!cachedField.canBeNull)
 						value = kryo.readObject(inputChunked, concreteType, serializer);
 					else
@@ -281,6 +335,7 @@ public class CompatibleFieldSerializer extends Serializer {
 				System.arraycopy(fields, 0, newFields, 0, i);
 				System.arraycopy(fields, i + 1, newFields, i, newFields.length - i);
 				fields = newFields;
+				fieldsVersion++;
 				return;
 			}
 		}
@@ -294,6 +349,7 @@ public class CompatibleFieldSerializer extends Serializer {
 		Serializer serializer;
 		boolean canBeNull;
 		int accessIndex = -1;
+		long offset = -1;
 
 		/** @param fieldClass The concrete class of the values for this field. This saves 1-2 bytes. The serializer registered for the
 		 *           specified class will be used. Only set to a non-null value if the field type in the class definition is final
@@ -301,6 +357,7 @@ public class CompatibleFieldSerializer extends Serializer {
 		public void setClass (Class fieldClass) {
 			this.fieldClass = fieldClass;
 			this.serializer = null;
+			fieldsVersion++;
 		}
 
 		/** @param fieldClass The concrete class of the values for this field. This saves 1-2 bytes. Only set to a non-null value if
@@ -308,10 +365,12 @@ public class CompatibleFieldSerializer extends Serializer {
 		public void setClass (Class fieldClass, Serializer serializer) {
 			this.fieldClass = fieldClass;
 			this.serializer = serializer;
+			fieldsVersion++;
 		}
 
 		public void setCanBeNull (boolean canBeNull) {
 			this.canBeNull = canBeNull;
+			fieldsVersion++;
 		}
 
 		public String toString () {
@@ -320,14 +379,36 @@ public class CompatibleFieldSerializer extends Serializer {
 
 		Object get (Object object) throws IllegalAccessException {
 			if (accessIndex != -1) return ((FieldAccess)access).get(object, accessIndex);
+			if (offset != -1) return UnsafeFields.get(object, field, offset);
 			return field.get(object);
 		}
 
 		void set (Object object, Object value) throws IllegalAccessException {
 			if (accessIndex != -1)
 				((FieldAccess)access).set(object, accessIndex, value);
+			else if (offset != -1)
+				UnsafeFields.set(object, field, offset, value);
 			else
 				field.set(object, value);
 		}
 	}
+
+	/** The state for the fields that depends on the Kryo doing the serialization. A serializer may be shared by Kryo instances with
+	 * different registrations, so nothing looked up from a Kryo is stored in the {@link CachedField cached fields}. A Kryo is used
+	 * by one thread at a time, so the state needs no synchronization. */
+	static class KryoState {
+		final int fieldsVersion;
+		final CachedField[] fields;
+		/** The {@link PrimitiveFields} kind of each field. */
+		final int[] kinds;
+		/** The serializers looked up for fields with a concrete class, set the first time each is needed. */
+		final Serializer[] serializers;
+
+		KryoState (int fieldsVersion, CachedField[] fields) {
+			this.fieldsVersion = fieldsVersion;
+			this.fields = fields;
+			kinds = new int[fields.length];
+			serializers = new Serializer[fields.length];
+		}
+	}
 }
@@ -110,11 +110,11 @@ public class DefaultSerializers {
 		}
 
 		public void write (Kryo kryo, Output output, String object) {
-			output.writeString(object);
+			kryo.writeSessionString(output, object);
 		}
 
 		public String create (Kryo kryo, Input input, Class<String> type) {
-			return input.readString();
+			return kryo.readSessionString(input);
 		}
 	}
 
@@ -139,6 +139,185 @@ public class DefaultSerializers {
 		}
 	}
 
+	/** Writes the values with fixed width by default, or with {@link Output#writeInt(int, boolean) variable length encoding} if
+	 * {@link #setVariableLength(boolean)} is true. */
+	static public class IntArraySerializer extends Serializer<int[]> {
+		private boolean variableLength;
+
+		{
+			setAcceptsNull(true);
+		}
+
+		/** @param variableLength If true, the values are written with variable length zigzag encoding, which is smaller for values
+		 *           near zero. Default is false. */
+		public void setVariableLength (boolean variableLength) {
+			this.variableLength = variableLength;
+		}
+
+		public void write (Kryo kryo, Output output, int[] object) {
+			if (object == null) {
+				output.writeByte(NULL);
+				return;
+			}
+			output.writeInt(object.length + 1, true);
+			if (variableLength)
+				output.writeInts(object, 0, object.length, false);
+			else
+				output.writeInts(object, 0, object.length);
+		}
+
+		public int[] create (Kryo kryo, Input input, Class<int[]> type) {
+			int length = input.readInt(true);
+			if (length == NULL) return null;
+			if (variableLength) return input.readInts(length - 1, false);
+			return input.readInts(length - 1);
+		}
+	}
+
+	/** Writes the values with fixed width by default, or with {@link Output#writeLong(long, boolean) variable length encoding} if
+	 * {@link #setVariableLength(boolean)} is true. */
+	static public class LongArraySerializer extends Serializer<long[]> {
+		private boolean variableLength;
+
+		{
+			setAcceptsNull(true);
+		}
+
+		/** @param variableLength If true, the values are written with variable length zigzag encoding, which is smaller for values
+		 *           near zero. Default is false. */
+		public void setVariableLength (boolean variableLength) {
+			this.variableLength = variableLength;
+		}
+
+		public void write (Kryo kryo, Output output, long[] object) {
+			if (object == null) {
+				output.writeByte(NULL);
+				return;
+			}
+			output.writeInt(object.length + 1, true);
+			if (variableLength)
+				output.writeLongs(object, 0, object.length, false);
+			else
+				output.writeLongs(object, 0, object.length);
+		}
+
+		public long[] create (Kryo kryo, Input input, Class<long[]> type) {
+			int length = input.readInt(true);
+			if (length == NULL) return null;
+			if (variableLength) return input.readLongs(length - 1, false);
+			return input.readLongs(length - 1);
+		}
+	}
+
+	static public class ShortArraySerializer extends Serializer<short[]> {
+		{
+			setAcceptsNull(true);
+		}
+
+		public void write (Kryo kryo, Output output, short[] object) {
+			if (object == null) {
+				output.writeByte(NULL);
+				return;
+			}
+			output.writeInt(object.length + 1, true);
+			output.writeShorts(object, 0, object.length);
+		}
+
+		public short[] create (Kryo kryo, Input input, Class<short[]> type) {
+			int length = input.readInt(true);
+			if (length == NULL) return null;
+			return input.readShorts(length - 1);
+		}
+	}
+
+	static public class FloatArraySerializer extends Serializer<float[]> {
+		{
+			setAcceptsNull(true);
+		}
+
+		public void write (Kryo kryo, Output output, float[] object) {
+			if (object == null) {
+				output.writeByte(NULL);
+				return;
+			}
+			output.writeInt(object.length + 1, true);
+			output.writeFloats(object, 0, object.length);
+		}
+
+		public float[] create (Kryo kryo, Input input, Class<float[]> type) {
+			int length = input.readInt(true);
+			if (length == NULL) return null;
+			return input.readFloats(length - 1);
+		}
+	}
+
+	static public class DoubleArraySerializer extends Serializer<double[]> {
+		{
+			setAcceptsNull(true);
+		}
+
+		public void write (Kryo kryo, Output output, double[] object) {
+			if (object == null) {
+				output.writeByte(NULL);
+				return;
+			}
+			output.writeInt(object.length + 1, true);
+			output.writeDoubles(object, 0, object.length);
+		}
+
+		public double[] create (Kryo kryo, Input input, Class<double[]> type) {
+			int length = input.readInt(true);
+			if (length == NULL) return null;
+			return input.readDoubles(length - 1);
+		}
+	}
+
+	static public class CharArraySerializer extends Serializer<char[]> {
+		{
+			setAcceptsNull(true);
+		}
+
+		public void write (Kryo kryo, Output output, char[] object) {
+			if (object == null) {
+				output.writeByte(NULL);
+				return;
+			}
+			output.writeInt(object.length + 1, true);
+			output.writeChars(object, 0, object.length);
+		}
+
+		public char[] create (Kryo kryo, Input input, Class<char[]> type) {
+			int length = input.readInt(true);
+			if (length == NULL) return null;
+			return input.readChars(length - 1);
+		}
+	}
+
+	static public class BooleanArraySerializer extends Serializer<boolean[]> {
+		{
+			setAcceptsNull(true);
+		}
+
+		public void write (Kryo kryo, Output output, boolean[] object) {
+			if (object == null) {
+				output.writeByte(NULL);
+				return;
+			}
+			output.writeInt(object.length + 1, true);
+			for (int i = 0, n = object.length; i < n; i++)
+				output.writeBoolean(object[i]);
+		}
+
+		public boolean[] create (Kryo kryo, Input input, Class<boolean[]> type) {
+			int length = input.readInt(true);
+			if (length == NULL) return null;
+			boolean[] array = new boolean[--length];
+			for (int i = 0; i < length; i++)
+				array[i] = input.readBoolean();
+			return array;
+		}
+	}
+
 	static public class BigIntegerSerializer extends Serializer<BigInteger> {
 		{
 			setAcceptsNull(true);
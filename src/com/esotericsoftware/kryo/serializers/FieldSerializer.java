@@ -9,6 +9,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.security.AccessControlException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.PriorityQueue;
@@ -46,6 +47,14 @@ public class FieldSerializer extends Serializer {
 	private boolean fieldsCanBeNull = true, setFieldsAsAccessible = true;
 	private boolean ignoreSyntheticFields = true;
 	private boolean finalFieldTypes;
+	private boolean useAsm = true;
+	/** Incremented when the fields change, which discards the {@link KryoState} of every Kryo. */
+	private volatile int fieldsVersion;
+	/** The state for the Kryo this serializer was created with. */
+	private KryoState ownerState;
+	/** The class generated for the fields and the types it inlines, shared by every Kryo that inlines the same fields. */
+	private Class generatedClass;
+	private Class[] generatedInlined;
 
 	public FieldSerializer (Kryo kryo, Class type) {
 		this.kryo = kryo;
@@ -56,6 +65,7 @@ public class FieldSerializer extends Serializer {
 	protected void rebuildCachedFields () {
 		if (type.isInterface()) {
 			fields = new CachedField[0]; // No fields to serialize.
+			fieldsChanged();
 			return;
 		}
 
@@ -100,6 +110,7 @@ public class FieldSerializer extends Serializer {
 
 			CachedField cachedField = new CachedField();
 			cachedField.field = field;
+			cachedField.offset = UnsafeFields.offset(field);
 			if (fieldsCanBeNull)
 				cachedField.canBeNull = !fieldClass.isPrimitive() && !field.isAnnotationPresent(NotNull.class);
 			else
@@ -129,6 +140,16 @@ public class FieldSerializer extends Serializer {
 		fields = new CachedField[fieldCount];
 		for (int i = 0; i < fieldCount; i++)
 			fields[i] = cachedFields.poll();
+		fieldsChanged();
+	}
+
+	/** Discards the state kept for each Kryo and the generated class, which depend on the fields. */
+	private void fieldsChanged () {
+		synchronized (this) {
+			generatedClass = null;
+			generatedInlined = null;
+		}
+		fieldsVersion++;
 	}
 
 	/** Sets the default value for {@link CachedField#setCanBeNull(boolean)}. Calling this method resets the {@link #getFields()
@@ -164,84 +185,171 @@ public class FieldSerializer extends Serializer {
 		rebuildCachedFields();
 	}
 
-	public void write (Kryo kryo, Output output, Object object) {
+	/** Controls if a class is generated that accesses public primitive and String fields directly and writes them without going
+	 * through {@link Kryo}. The bytes written are the same either way. If the class cannot be generated, eg because the class being
+	 * serialized is not public, the fields are serialized using reflection or ReflectASM. Default is true. */
+	public void setUseAsm (boolean useAsm) {
+		this.useAsm = useAsm;
+		fieldsChanged();
+	}
+
+	public Class getType () {
+		return type;
+	}
+
+	/** Returns the state for the Kryo, creating it the first time the Kryo uses this serializer after the fields have changed. The
+	 * state for the Kryo this serializer was created with is kept by this serializer, the state for other Kryo instances sharing
+	 * this serializer through a {@link Kryo#Kryo(Kryo) registry} is kept in their {@link Kryo#getContext() context}. */
+	private KryoState getState (Kryo kryo) {
+		boolean owner = kryo == this.kryo;
+		KryoState state = owner ? ownerState : (KryoState)kryo.getContext().get(this);
+		int fieldsVersion = this.fieldsVersion;
+		if (state != null && state.fieldsVersion == fieldsVersion) return state;
+
+		CachedField[] fields = this.fields;
+		state = new KryoState(fieldsVersion, fields);
 		for (int i = 0, n = fields.length; i < n; i++) {
 			CachedField cachedField = fields[i];
-			try {
-				if (TRACE) trace("kryo", "Write field: " + cachedField + " (" + object.getClass().getName() + ")");
+			state.kinds[i] = PrimitiveFields.kind(kryo, cachedField.field, cachedField.fieldClass, cachedField.serializer,
+				cachedField.canBeNull);
+		}
+		if (useAsm) {
+			Class[] inlined = FieldSerializerGenerator.inlinedTypes(kryo, type, fields);
+			if (inlined != null) {
+				Class generatedClass = getGeneratedClass(fields, inlined);
+				if (generatedClass != null) state.generated = FieldSerializerGenerator.newAccess(generatedClass, this, state);
+			}
+		}
+		if (owner)
+			ownerState = state;
+		else
+			kryo.getContext().put(this, state);
+		return state;
+	}
 
-				Object value = cachedField.get(object);
+	/** Returns the class generated for the inlined types, generating it the first time it is needed after the fields have changed.
+	 * Returns null if it could not be generated or if it was generated for a Kryo that inlines different types. */
+	private synchronized Class getGeneratedClass (CachedField[] fields, Class[] inlined) {
+		if (generatedInlined == null) {
+			generatedClass = FieldSerializerGenerator.generate(type, fields, inlined);
+			generatedInlined = inlined;
+		} else if (!Arrays.equals(generatedInlined, inlined))
+			return null;
+		return generatedClass;
+	}
+
+	public void write (Kryo kryo, Output output, Object object) {
+		KryoState state = getState(kryo);
+		if (state.generated != null) {
+			state.generated.write(kryo, output, object);
+			return;
+		}
+		for (int i = 0, n = state.fields.length; i < n; i++)
+			writeField(kryo, output, object, state, i);
+	}
 
-				Serializer serializer = cachedField.serializer;
+	void writeField (Kryo kryo, Output output, Object object, KryoState state, int index) {
+		CachedField cachedField = state.fields[index];
+		try {
+			if (TRACE) trace("kryo", "Write field: " + cachedField + " (" + object.getClass().getName() + ")");
 
-				if (cachedField.fieldClass == null) {
+			int kind = state.kinds[index];
+			if (kind != PrimitiveFields.NONE) {
+				PrimitiveFields.write(output, object, cachedField.field, cachedField.offset, kind);
+				return;
+			}
+
+			Object value = cachedField.get(object);
+
+			Serializer serializer = cachedField.serializer;
+
+			if (cachedField.fieldClass == null) {
+				if (value == null) {
+					kryo.writeClass(output, null);
+					return;
+				}
+				Registration registration = kryo.writeClass(output, value.getClass());
+				if (serializer == null) serializer = registration.getSerializer();
+				kryo.writeObject(output, value, serializer);
+			} else {
+				if (serializer == null) {
+					serializer = state.serializers[index];
+					if (serializer == null) state.serializers[index] = serializer = kryo.getSerializer(cachedField.fieldClass);
+				}
+				if (cachedField.canBeNull) {
+					kryo.writeObjectOrNull(output, value, serializer);
+				} else {
 					if (value == null) {
-						kryo.writeClass(output, null);
-						continue;
+						throw new KryoException("Field value is null but canBeNull is false: " + cachedField + " ("
+							+ object.getClass().getName() + ")");
 					}
-					Registration registration = kryo.writeClass(output, value.getClass());
-					if (serializer == null) serializer = registration.getSerializer();
 					kryo.writeObject(output, value, serializer);
-				} else {
-					if (serializer == null) cachedField.serializer = serializer = kryo.getSerializer(cachedField.fieldClass);
-					if (cachedField.canBeNull) {
-						kryo.writeObjectOrNull(output, value, serializer);
-					} else {
-						if (value == null) {
-							throw new KryoException("Field value is null but canBeNull is false: " + cachedField + " ("
-								+ object.getClass().getName() + ")");
-						}
-						kryo.writeObject(output, value, serializer);
-					}
 				}
-			} catch (IllegalAccessException ex) {
-				throw new KryoException("Error accessing field: " + cachedField + " (" + object.getClass().getName() + ")", ex);
-			} catch (KryoException ex) {
-				ex.addTrace(cachedField + " (" + object.getClass().getName() + ")");
-				throw ex;
-			} catch (RuntimeException runtimeEx) {
-				KryoException ex = new KryoException(runtimeEx);
-				ex.addTrace(cachedField + " (" + object.getClass().getName() + ")");
-				throw ex;
 			}
+		} catch (IllegalAccessException ex) {
+			throw new KryoException("Error accessing field: " + cachedField + " (" + object.getClass().getName() + ")", ex);
+		} catch (KryoException ex) {
+			ex.addTrace(cachedField + " (" + object.getClass().getName() + ")");
+			throw ex;
+		} catch (RuntimeException runtimeEx) {
+			KryoException ex = new KryoException(runtimeEx);
+			ex.addTrace(cachedField + " (" + object.getClass().getName() + ")");
+			throw ex;
 		}
 	}
 
 	public void read (Kryo kryo, Input input, Object object) {
-		for (int i = 0, n = fields.length; i < n; i++) {
-			CachedField cachedField = fields[i];
-			try {
-				if (TRACE) trace("kryo", "Read field: " + cachedField + " (" + type.getName() + ")");
+		KryoState state = getState(kryo);
+		if (state.generated != null) {
+			state.generated.read(kryo, input, object);
+			return;
+		}
+		for (int i = 0, n = state.fields.length; i < n; i++)
+			readField(kryo, input, object, state, i);
+	}
 
-				Object value = null;
+	void readField (Kryo kryo, Input input, Object object, KryoState state, int index) {
+		CachedField cachedField = state.fields[index];
+		try {
+			if (TRACE) trace("kryo", "Read field: " + cachedField + " (" + type.getName() + ")");
 
-				Class concreteType = cachedField.fieldClass;
-				Serializer serializer = cachedField.serializer;
-				if (concreteType == null) {
-					Registration registration = kryo.readClass(input);
-					if (registration != null) { // Else value is null.
-						if (serializer == null) serializer = registration.getSerializer();
-						value = kryo.readObject(input, registration.getType(), serializer);
-					}
-				} else {
-					if (serializer == null) cachedField.serializer = serializer = kryo.getSerializer(concreteType);
-					if (cachedField.canBeNull)
-						value = kryo.readObjectOrNull(input, concreteType, serializer);
-					else
-						value = kryo.readObject(input, concreteType, serializer);
-				}
+			int kind = state.kinds[index];
+			if (kind != PrimitiveFields.NONE) {
+				PrimitiveFields.read(input, object, cachedField.field, cachedField.offset, kind);
+				return;
+			}
+
+			Object value = null;
 
-				cachedField.set(object, value);
-			} catch (IllegalAccessException ex) {
-				throw new KryoException("Error accessing field: " + cachedField + " (" + type.getName() + ")", ex);
-			} catch (KryoException ex) {
-				ex.addTrace(cachedField + " (" + type.getName() + ")");
-				throw ex;
-			} catch (RuntimeException runtimeEx) {
-				KryoException ex = new KryoException(runtimeEx);
-				ex.addTrace(cachedField + " (" + type.getName() + ")");
-				throw ex;
+			Class concreteType = cachedField.fieldClass;
+			Serializer serializer = cachedField.serializer;
+			if (concreteType == null) {
+				Registration registration = kryo.readClass(input);
+				if (registration != null) { // Else value is null.
+					if (serializer == null) serializer = registration.getSerializer();
+					value = kryo.readObject(input, registration.getType(), serializer);
+				}
+			} else {
+				if (serializer == null) {
+					serializer = state.serializers[index];
+					if (serializer == null) state.serializers[index] = serializer = kryo.getSerializer(concreteType);
+				}
+				if (cachedField.canBeNull)
+					value = kryo.readObjectOrNull(input, concreteType, serializer);
+				else
+					value = kryo.readObject(input, concreteType, serializer);
 			}
+
+			cachedField.set(object, value);
+		} catch (IllegalAccessException ex) {
+			throw new KryoException("Error accessing field: " + cachedField + " (" + type.getName() + ")", ex);
+		} catch (KryoException ex) {
+			ex.addTrace(cachedField + " (" + type.getName() + ")");
+			throw ex;
+		} catch (RuntimeException runtimeEx) {
+			KryoException ex = new KryoException(runtimeEx);
+			ex.addTrace(cachedField + " (" + type.getName() + ")");
+			throw ex;
 		}
 	}
 
@@ -261,6 +369,7 @@ public class FieldSerializer extends Serializer {
 				System.arraycopy(fields, 0, newFields, 0, i);
 				System.arraycopy(fields, i + 1, newFields, i, newFields.length - i);
 				fields = newFields;
+				fieldsChanged();
 				return;
 			}
 		}
@@ -278,6 +387,7 @@ public class FieldSerializer extends Serializer {
 		Serializer serializer;
 		boolean canBeNull;
 		int accessIndex = -1;
+		long offset = -1;
 
 		/** @param fieldClass The concrete class of the values for this field. This saves 1-2 bytes. The serializer registered for the
 		 *           specified class will be used. Only set to a non-null value if the field type in the class definition is final
@@ -285,6 +395,7 @@ public class FieldSerializer extends Serializer {
 		public void setClass (Class fieldClass) {
 			this.fieldClass = fieldClass;
 			this.serializer = null;
+			fieldsChanged();
 		}
 
 		/** @param fieldClass The concrete class of the values for this field. This saves 1-2 bytes. Only set to a non-null value if
@@ -292,14 +403,17 @@ public class FieldSerializer extends Serializer {
 		public void setClass (Class fieldClass, Serializer serializer) {
 			this.fieldClass = fieldClass;
 			this.serializer = serializer;
+			fieldsChanged();
 		}
 
 		public void setSerializer (Serializer serializer) {
 			this.serializer = serializer;
+			fieldsChanged();
 		}
 
 		public void setCanBeNull (boolean canBeNull) {
 			this.canBeNull = canBeNull;
+			fieldsChanged();
 		}
 
 		public Field getField () {
@@ -312,17 +426,41 @@ public class FieldSerializer extends Serializer {
 
 		Object get (Object object) throws IllegalAccessException {
 			if (accessIndex != -1) return ((FieldAccess)access).get(object, accessIndex);
+			if (offset != -1) return UnsafeFields.get(object, field, offset);
 			return field.get(object);
 		}
 
 		void set (Object object, Object value) throws IllegalAccessException {
 			if (accessIndex != -1)
 				((FieldAccess)access).set(object, accessIndex, value);
+			else if (offset != -1)
+				UnsafeFields.set(object, field, offset, value);
 			else
 				field.set(object, value);
 		}
 	}
 
+	/** The state for the fields that depends on the Kryo doing the serialization. A serializer may be shared by Kryo instances with
+	 * different registrations, so nothing looked up from a Kryo is stored in the {@link CachedField cached fields}. A Kryo is used
+	 * by one thread at a time, so the state needs no synchronization. */
+	static class KryoState {
+		final int fieldsVersion;
+		final CachedField[] fields;
+		/** The {@link PrimitiveFields} kind of each field. */
+		final int[] kinds;
+		/** The serializers looked up for fields with a concrete class, set the first time each is needed. */
+		final Serializer[] serializers;
+		/** May be null. */
+		FieldSerializerGenerator.Access generated;
+
+		KryoState (int fieldsVersion, CachedField[] fields) {
+			this.fieldsVersion = fieldsVersion;
+			this.fields = fields;
+			kinds = new int[fields.length];
+			serializers = new Serializer[fields.length];
+		}
+	}
+
 	/** Indicates a field should be ignored when its declaring class is registered unless the {@link Kryo#getContext() context} has
 	 * a value set for specified key. This can be useful to useful when a field must be serialized for one purpose, but not for
 	 * another. Eg, a class for a networked application might have a field that should not be serialized and sent to clients, but
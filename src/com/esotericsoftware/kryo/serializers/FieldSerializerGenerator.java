@@ -0,0 +1,321 @@
+
+package com.esotericsoftware.kryo.serializers;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.WeakHashMap;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.Util;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer.CachedField;
+import com.esotericsoftware.kryo.serializers.FieldSerializer.KryoState;
+
+import static com.esotericsoftware.minlog.Log.*;
+import static org.objectweb.asm.Opcodes.*;
+
+/** Generates a class for a {@link FieldSerializer} that reads and writes the fields of an object without going through
+ * {@link Kryo} for each field. Public, non-final fields of a public class that are primitives or Strings using the default
+ * serializers are accessed directly and written with the {@link Output} methods those serializers use, so the bytes are identical
+ * to the bytes FieldSerializer writes. All other fields are serialized by FieldSerializer. */
+class FieldSerializerGenerator {
+	static private final String accessName = Type.getInternalName(Access.class);
+	static private final String kryoDesc = Type.getDescriptor(Kryo.class);
+	static private final String outputName = Type.getInternalName(Output.class);
+	static private final String inputName = Type.getInternalName(Input.class);
+	static private final WeakHashMap<ClassLoader, WeakReference<GeneratorClassLoader>> loaders = new WeakHashMap();
+
+	/** Returns the type of each field that the generated class accesses directly when serializing with the specified Kryo, or null
+	 * if no field benefits from a generated class. Which fields are inlined depends on the Kryo's registrations. Nothing is inlined
+	 * for a Kryo that overrides {@link Kryo#useReferences(Class)}, see {@link PrimitiveFields#isDefault(Kryo, Class, Serializer)}. */
+	static Class[] inlinedTypes (Kryo kryo, Class type, CachedField[] fields) {
+		if (Util.isAndroid || !Modifier.isPublic(type.getModifiers())) return null;
+		Class[] inlined = new Class[fields.length];
+		boolean any = false;
+		for (int i = 0, n = fields.length; i < n; i++) {
+			inlined[i] = inlinedType(kryo, fields[i]);
+			if (inlined[i] != null) any = true;
+		}
+		return any ? inlined : null;
+	}
+
+	/** Returns the generated class for the fields, or null if it could not be generated.
+	 * @param inlined The {@link #inlinedTypes(Kryo, Class, CachedField[]) inlined types}. */
+	static Class generate (Class type, CachedField[] fields, Class[] inlined) {
+		try {
+			String className = type.getName() + "KryoSerializer";
+			if (className.startsWith("java.")) className = "kryo." + className;
+			ClassLoader parent = type.getClassLoader();
+			if (parent == null) parent = FieldSerializerGenerator.class.getClassLoader();
+			GeneratorClassLoader loader = getLoader(parent);
+			Class generatedClass;
+			synchronized (loader) {
+				// The class is generated again for other fields or inlined types, so later classes get a numbered name.
+				className = loader.newClassName(className);
+				byte[] bytes = generate(className.replace('.', '/'), Type.getInternalName(type), fields, inlined);
+				generatedClass = loader.define(className, bytes);
+			}
+			if (TRACE) trace("kryo", "Generated serializer class: " + className);
+			return generatedClass;
+		} catch (Throwable ex) {
+			if (DEBUG) debug("kryo", "Unable to generate serializer class: " + type.getName(), ex);
+			return null;
+		}
+	}
+
+	/** Returns the loader that defines the generated classes for types loaded by the parent, so one loader is used per parent
+	 * rather than per generated class. The loader is discarded once none of its classes are in use. */
+	static private GeneratorClassLoader getLoader (ClassLoader parent) {
+		synchronized (loaders) {
+			WeakReference<GeneratorClassLoader> reference = loaders.get(parent);
+			GeneratorClassLoader loader = reference == null ? null : reference.get();
+			if (loader == null) {
+				loader = new GeneratorClassLoader(parent);
+				loaders.put(parent, new WeakReference(loader));
+			}
+			return loader;
+		}
+	}
+
+	/** Returns an instance of the generated class that serializes using the state of one Kryo. */
+	static Access newAccess (Class generatedClass, FieldSerializer serializer, KryoState state) {
+		Access access;
+		try {
+			access = (Access)generatedClass.newInstance();
+		} catch (Exception ex) {
+			throw new KryoException("Error creating generated serializer: " + generatedClass.getName(), ex);
+		}
+		access.serializer = serializer;
+		access.state = state;
+		access.fields = state.fields;
+		return access;
+	}
+
+	/** Returns the type of the field if it can be accessed and serialized by the generated class, else null. */
+	static private Class inlinedType (Kryo kryo, CachedField cachedField) {
+		Field field = cachedField.field;
+		int modifiers = field.getModifiers();
+		if (!Modifier.isPublic(modifiers) || Modifier.isFinal(modifiers)) return null;
+		if (!Modifier.isPublic(field.getDeclaringClass().getModifiers())) return null;
+		Class fieldClass = field.getType();
+		if (fieldClass == String.class) {
+			if (cachedField.fieldClass != fieldClass || !PrimitiveFields.isDefault(kryo, fieldClass, cachedField.serializer))
+				return null;
+		} else {
+			int kind = PrimitiveFields.kind(kryo, field, cachedField.fieldClass, cachedField.serializer, cachedField.canBeNull);
+			if (kind == PrimitiveFields.NONE) return null;
+		}
+		return fieldClass;
+	}
+
+	static private byte[] generate (String className, String typeName, CachedField[] fields, Class[] inlined) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(V1_5, ACC_PUBLIC + ACC_SUPER, className, null, accessName, null);
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, accessName, "<init>", "()V");
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		// Locals: 0 this, 1 kryo, 2 output or input, 3 object, 4 object cast to the type.
+		mv = cw.visitMethod(ACC_PUBLIC, "write", "(" + kryoDesc + "L" + outputName + ";Ljava/lang/Object;)V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 3);
+		mv.visitTypeInsn(CHECKCAST, typeName);
+		mv.visitVarInsn(ASTORE, 4);
+		for (int i = 0, n = fields.length; i < n; i++) {
+			Class fieldClass = inlined[i];
+			if (fieldClass == null) {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitVarInsn(ALOAD, 2);
+				mv.visitVarInsn(ALOAD, 3);
+				pushInt(mv, i);
+				mv.visitMethodInsn(INVOKEVIRTUAL, accessName, "writeField", "(" + kryoDesc + "L" + outputName
+					+ ";Ljava/lang/Object;I)V");
+				continue;
+			}
+			Field field = fields[i].field;
+			String owner = Type.getInternalName(field.getDeclaringClass());
+			String fieldDesc = Type.getDescriptor(fieldClass);
+			if (fieldClass == String.class) {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitVarInsn(ALOAD, 2);
+				mv.visitVarInsn(ALOAD, 4);
+				mv.visitFieldInsn(GETFIELD, owner, field.getName(), fieldDesc);
+				pushInt(mv, i);
+				mv.visitMethodInsn(INVOKEVIRTUAL, accessName, "writeString", "(" + kryoDesc + "L" + outputName
+					+ ";Ljava/lang/String;I)V");
+				continue;
+			}
+			mv.visitVarInsn(ALOAD, 2);
+			mv.visitVarInsn(ALOAD, 4);
+			mv.visitFieldInsn(GETFIELD, owner, field.getName(), fieldDesc);
+			if (fieldClass == int.class || fieldClass == long.class) {
+				mv.visitInsn(ICONST_0);
+				mv.visitMethodInsn(INVOKEVIRTUAL, outputName, writeMethod(fieldClass), "(" + fieldDesc + "Z)I");
+				mv.visitInsn(POP);
+			} else if (fieldClass == short.class)
+				mv.visitMethodInsn(INVOKEVIRTUAL, outputName, "writeShort", "(I)V");
+			else
+				mv.visitMethodInsn(INVOKEVIRTUAL, outputName, writeMethod(fieldClass), "(" + fieldDesc + ")V");
+		}
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(ACC_PUBLIC, "read", "(" + kryoDesc + "L" + inputName + ";Ljava/lang/Object;)V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 3);
+		mv.visitTypeInsn(CHECKCAST, typeName);
+		mv.visitVarInsn(ASTORE, 4);
+		for (int i = 0, n = fields.length; i < n; i++) {
+			Class fieldClass = inlined[i];
+			if (fieldClass == null) {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitVarInsn(ALOAD, 2);
+				mv.visitVarInsn(ALOAD, 3);
+				pushInt(mv, i);
+				mv.visitMethodInsn(INVOKEVIRTUAL, accessName, "readField", "(" + kryoDesc + "L" + inputName
+					+ ";Ljava/lang/Object;I)V");
+				continue;
+			}
+			Field field = fields[i].field;
+			String owner = Type.getInternalName(field.getDeclaringClass());
+			String fieldDesc = Type.getDescriptor(fieldClass);
+			mv.visitVarInsn(ALOAD, 4);
+			if (fieldClass == String.class) {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitVarInsn(ALOAD, 2);
+				pushInt(mv, i);
+				mv.visitMethodInsn(INVOKEVIRTUAL, accessName, "readString", "(" + kryoDesc + "L" + inputName
+					+ ";I)Ljava/lang/String;");
+			} else {
+				mv.visitVarInsn(ALOAD, 2);
+				if (fieldClass == int.class || fieldClass == long.class) {
+					mv.visitInsn(ICONST_0);
+					mv.visitMethodInsn(INVOKEVIRTUAL, inputName, readMethod(fieldClass), "(Z)" + fieldDesc);
+				} else
+					mv.visitMethodInsn(INVOKEVIRTUAL, inputName, readMethod(fieldClass), "()" + fieldDesc);
+			}
+			mv.visitFieldInsn(PUTFIELD, owner, field.getName(), fieldDesc);
+		}
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	static private void pushInt (MethodVisitor mv, int value) {
+		if (value <= 5)
+			mv.visitInsn(ICONST_0 + value);
+		else if (value <= Byte.MAX_VALUE)
+			mv.visitIntInsn(BIPUSH, value);
+		else if (value <= Short.MAX_VALUE)
+			mv.visitIntInsn(SIPUSH, value);
+		else
+			mv.visitLdcInsn(value);
+	}
+
+	static private String writeMethod (Class type) {
+		return "write" + methodSuffix(type);
+	}
+
+	static private String readMethod (Class type) {
+		return "read" + methodSuffix(type);
+	}
+
+	static private String methodSuffix (Class type) {
+		String name = type.getName();
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+
+	/** The superclass of generated classes. Public so generated classes in other class loaders can extend it. */
+	static public abstract class Access {
+		FieldSerializer serializer;
+		KryoState state;
+		CachedField[] fields;
+
+		public abstract void write (Kryo kryo, Output output, Object object);
+
+		public abstract void read (Kryo kryo, Input input, Object object);
+
+		/** Writes a field that is not accessed by the generated class. */
+		public void writeField (Kryo kryo, Output output, Object object, int index) {
+			serializer.writeField(kryo, output, object, state, index);
+		}
+
+		/** Reads a field that is not accessed by the generated class. */
+		public void readField (Kryo kryo, Input input, Object object, int index) {
+			serializer.readField(kryo, input, object, state, index);
+		}
+
+		/** Writes the same bytes as {@link Kryo#writeObjectOrNull(Output, Object, Serializer)} or
+		 * {@link Kryo#writeObject(Output, Object, Serializer)} with the String serializer. */
+		public void writeString (Kryo kryo, Output output, String value, int index) {
+			CachedField cachedField = fields[index];
+			if (cachedField.canBeNull) {
+				if (kryo.getReferences()) {
+					if (value == null) {
+						output.writeByte(Kryo.NULL);
+						return;
+					}
+					output.writeByte(Kryo.NOT_NULL);
+				}
+			} else if (value == null) {
+				throw new KryoException("Field value is null but canBeNull is false: " + cachedField + " ("
+					+ serializer.getType().getName() + ")");
+			}
+			kryo.writeSessionString(output, value);
+		}
+
+		/** Reads the bytes written by {@link #writeString(Kryo, Output, String, int)}. */
+		public String readString (Kryo kryo, Input input, int index) {
+			if (fields[index].canBeNull && kryo.getReferences() && input.readInt(true) == Kryo.NULL) return null;
+			return kryo.readSessionString(input);
+		}
+	}
+
+	/** Defines a generated class. The classes the generated class refers to are loaded from the class loader of the serialized
+	 * type, except for the Kryo classes, which may not be visible from that class loader. */
+	static private class GeneratorClassLoader extends ClassLoader {
+		GeneratorClassLoader (ClassLoader parent) {
+			super(parent);
+		}
+
+		/** Returns the name, or the name with the lowest number appended that is not already defined by this loader. */
+		String newClassName (String name) {
+			if (findLoadedClass(name) == null) return name;
+			for (int i = 2;; i++)
+				if (findLoadedClass(name + i) == null) return name + i;
+		}
+
+		Class define (String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+		protected synchronized Class loadClass (String name, boolean resolve) throws ClassNotFoundException {
+			if (name.equals(Access.class.getName())) return Access.class;
+			if (name.equals(Kryo.class.getName())) return Kryo.class;
+			if (name.equals(Output.class.getName())) return Output.class;
+			if (name.equals(Input.class.getName())) return Input.class;
+			return super.loadClass(name, resolve);
+		}
+	}
+}
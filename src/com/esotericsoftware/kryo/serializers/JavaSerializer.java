@@ -12,22 +12,17 @@ import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
 /** Serializes objects using Java's built in serialization mechanism. Note that this is very inefficient and should be avoided if
- * possible.
+ * possible. A new {@link ObjectOutputStream} is used for each object, so JavaSerializer has no state and can be shared by multiple
+ * Kryo instances.
  * @see Serializer
  * @see FieldSerializer
  * @see KryoSerializable
  * @author Nathan Sweet <misc@n4te.com> */
 public class JavaSerializer extends Serializer {
-	private ObjectOutputStream objectStream;
-	private Output lastOutput;
-
 	public void write (Kryo kryo, Output output, Object object) {
 		try {
-			if (output != lastOutput) {
-				objectStream = new ObjectOutputStream(output);
-				lastOutput = output;
-			} else
-				objectStream.reset();
+			// Each object is read with a new ObjectInputStream, so each must be written with a new ObjectOutputStream.
+			ObjectOutputStream objectStream = new ObjectOutputStream(output);
 			objectStream.writeObject(object);
 			objectStream.flush();
 		} catch (Exception ex) {
@@ -0,0 +1,217 @@
+
+package com.esotericsoftware.kryo.serializers;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+
+import sun.misc.Unsafe;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.BooleanSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.ByteSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.CharSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.DoubleSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.FloatSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.IntSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.LongSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.ShortSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.StringSerializer;
+
+/** Reads and writes primitive fields by their {@link UnsafeFields offset} or with the typed {@link Field} accessors, without
+ * boxing the values or going through {@link Kryo}. The bytes are the same as those written by the default serializers for the
+ * primitive types. */
+class PrimitiveFields {
+	/** The field is serialized through Kryo. */
+	static final int NONE = 0;
+	static final int INT = 1, LONG = 2, FLOAT = 3, DOUBLE = 4, BOOLEAN = 5, BYTE = 6, CHAR = 7, SHORT = 8;
+
+	/** For each Kryo subclass, true if it overrides {@link Kryo#useReferences(Class)}. */
+	static private final ConcurrentHashMap<Class, Boolean> overridesUseReferences = new ConcurrentHashMap();
+
+	/** Returns the kind of the field, or {@link #NONE} if the field is not a primitive that is serialized by the default
+	 * serializer for its type.
+	 * @param fieldClass The concrete class set for the field, may be null.
+	 * @param serializer The serializer set for the field, may be null. */
+	static int kind (Kryo kryo, Field field, Class fieldClass, Serializer serializer, boolean canBeNull) {
+		Class type = field.getType();
+		if (!type.isPrimitive() || fieldClass != type || canBeNull) return NONE;
+		if (!isDefault(kryo, type, serializer)) return NONE;
+		if (type == int.class) return INT;
+		if (type == long.class) return LONG;
+		if (type == float.class) return FLOAT;
+		if (type == double.class) return DOUBLE;
+		if (type == boolean.class) return BOOLEAN;
+		if (type == byte.class) return BYTE;
+		if (type == char.class) return CHAR;
+		return SHORT;
+	}
+
+	/** Returns true if values of the primitive or String type are written without references by the default serializer for the
+	 * type. This is never true for a Kryo that {@link #overridesUseReferences(Kryo) overrides} {@link Kryo#useReferences(Class)}.
+	 * @param serializer The serializer set for the field, may be null to use the registered serializer. */
+	static boolean isDefault (Kryo kryo, Class type, Serializer serializer) {
+		if (overridesUseReferences(kryo)) return false;
+		Registration registration = kryo.getRegistration(type);
+		if (registration.getReferences()) return false;
+		if (serializer == null) serializer = registration.getSerializer();
+		return serializer.getClass() == defaultSerializer(type);
+	}
+
+	/** Returns true if the class of the Kryo overrides {@link Kryo#useReferences(Class)}. Whether such a Kryo writes references for
+	 * a type is only known by calling it, so values cannot be written without going through the Kryo. */
+	static boolean overridesUseReferences (Kryo kryo) {
+		Class kryoClass = kryo.getClass();
+		if (kryoClass == Kryo.class) return false;
+		Boolean overrides = overridesUseReferences.get(kryoClass);
+		if (overrides == null) {
+			overrides = false;
+			for (Class type = kryoClass; type != Kryo.class; type = type.getSuperclass()) {
+				try {
+					type.getDeclaredMethod("useReferences", Class.class);
+					overrides = true;
+					break;
+				} catch (NoSuchMethodException ignored) {
+				}
+			}
+			overridesUseReferences.put(kryoClass, overrides);
+		}
+		return overrides;
+	}
+
+	static private Class defaultSerializer (Class type) {
+		if (type == int.class) return IntSerializer.class;
+		if (type == long.class) return LongSerializer.class;
+		if (type == float.class) return FloatSerializer.class;
+		if (type == double.class) return DoubleSerializer.class;
+		if (type == boolean.class) return BooleanSerializer.class;
+		if (type == byte.class) return ByteSerializer.class;
+		if (type == char.class) return CharSerializer.class;
+		if (type == short.class) return ShortSerializer.class;
+		if (type == String.class) return StringSerializer.class;
+		return null;
+	}
+
+	/** @param offset The {@link UnsafeFields#offset(Field) offset} of the field, or -1 to use reflection. */
+	static void write (Output output, Object object, Field field, long offset, int kind) throws IllegalAccessException {
+		if (offset != -1) {
+			Unsafe unsafe = UnsafeFields.unsafe;
+			switch (kind) {
+			case INT:
+				output.writeInt(unsafe.getInt(object, offset), false);
+				break;
+			case LONG:
+				output.writeLong(unsafe.getLong(object, offset), false);
+				break;
+			case FLOAT:
+				output.writeFloat(unsafe.getFloat(object, offset));
+				break;
+			case DOUBLE:
+				output.writeDouble(unsafe.getDouble(object, offset));
+				break;
+			case BOOLEAN:
+				output.writeBoolean(unsafe.getBoolean(object, offset));
+				break;
+			case BYTE:
+				output.writeByte(unsafe.getByte(object, offset));
+				break;
+			case CHAR:
+				output.writeChar(unsafe.getChar(object, offset));
+				break;
+			case SHORT:
+				output.writeShort(unsafe.getShort(object, offset));
+				break;
+			}
+			return;
+		}
+		switch (kind) {
+		case INT:
+			output.writeInt(field.getInt(object), false);
+			break;
+		case LONG:
+			output.writeLong(field.getLong(object), false);
+			break;
+		case FLOAT:
+			output.writeFloat(field.getFloat(object));
+			break;
+		case DOUBLE:
+			output.writeDouble(field.getDouble(object));
+			break;
+		case BOOLEAN:
+			output.writeBoolean(field.getBoolean(object));
+			break;
+		case BYTE:
+			output.writeByte(field.getByte(object));
+			break;
+		case CHAR:
+			output.writeChar(field.getChar(object));
+			break;
+		case SHORT:
+			output.writeShort(field.getShort(object));
+			break;
+		}
+	}
+
+	/** @param offset The {@link UnsafeFields#offset(Field) offset} of the field, or -1 to use reflection. */
+	static void read (Input input, Object object, Field field, long offset, int kind) throws IllegalAccessException {
+		if (offset != -1) {
+			Unsafe unsafe = UnsafeFields.unsafe;
+			switch (kind) {
+			case INT:
+				unsafe.putInt(object, offset, input.readInt(false));
+				break;
+			case LONG:
+				unsafe.putLong(object, offset, input.readLong(false));
+				break;
+			case FLOAT:
+				unsafe.putFloat(object, offset, input.readFloat());
+				break;
+			case DOUBLE:
+				unsafe.putDouble(object, offset, input.readDouble());
+				break;
+			case BOOLEAN:
+				unsafe.putBoolean(object, offset, input.readBoolean());
+				break;
+			case BYTE:
+				unsafe.putByte(object, offset, input.readByte());
+				break;
+			case CHAR:
+				unsafe.putChar(object, offset, input.readChar());
+				break;
+			case SHORT:
+				unsafe.putShort(object, offset, input.readShort());
+				break;
+			}
+			return;
+		}
+		switch (kind) {
+		case INT:
+			field.setInt(object, input.readInt(false));
+			break;
+		case LONG:
+			field.setLong(object, input.readLong(false));
+			break;
+		case FLOAT:
+			field.setFloat(object, input.readFloat());
+			break;
+		case DOUBLE:
+			field.setDouble(object, input.readDouble());
+			break;
+		case BOOLEAN:
+			field.setBoolean(object, input.readBoolean());
+			break;
+		case BYTE:
+			field.setByte(object, input.readByte());
+			break;
+		case CHAR:
+			field.setChar(object, input.readChar());
+			break;
+		case SHORT:
+			field.setShort(object, input.readShort());
+			break;
+		}
+	}
+}
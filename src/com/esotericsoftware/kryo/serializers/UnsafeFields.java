@@ -0,0 +1,82 @@
+
+package com.esotericsoftware.kryo.serializers;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import sun.misc.Unsafe;
+
+import com.esotericsoftware.kryo.Util;
+
+import static com.esotericsoftware.minlog.Log.*;
+
+/** Accesses fields by their offset using {@link Unsafe}, which works for private and final fields without the access checks and
+ * boxing of {@link Field#get(Object)} and {@link Field#set(Object, Object)}. If Unsafe is not available, eg on Android, or a field
+ * has no offset, the field is accessed using reflection. */
+class UnsafeFields {
+	static final Unsafe unsafe;
+	static {
+		Unsafe value = null;
+		if (!Util.isAndroid) {
+			try {
+				Field field = Unsafe.class.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				value = (Unsafe)field.get(null);
+			} catch (Throwable ex) {
+				if (TRACE) trace("kryo", "Unsafe is not available, fields will be accessed using reflection.");
+			}
+		}
+		unsafe = value;
+	}
+
+	/** Returns the offset of the field, or -1 if it must be accessed using reflection. Volatile fields are always accessed using
+	 * reflection so their memory semantics are kept. */
+	static long offset (Field field) {
+		if (unsafe == null || Modifier.isVolatile(field.getModifiers())) return -1;
+		try {
+			return unsafe.objectFieldOffset(field);
+		} catch (Throwable ex) {
+			return -1;
+		}
+	}
+
+	/** Returns the value of the field at the offset, boxing primitive values. */
+	static Object get (Object object, Field field, long offset) {
+		Class type = field.getType();
+		if (!type.isPrimitive()) return unsafe.getObject(object, offset);
+		if (type == int.class) return unsafe.getInt(object, offset);
+		if (type == long.class) return unsafe.getLong(object, offset);
+		if (type == float.class) return unsafe.getFloat(object, offset);
+		if (type == double.class) return unsafe.getDouble(object, offset);
+		if (type == boolean.class) return unsafe.getBoolean(object, offset);
+		if (type == byte.class) return unsafe.getByte(object, offset);
+		if (type == char.class) return unsafe.getChar(object, offset);
+		return unsafe.getShort(object, offset);
+	}
+
+	/** Sets the value of the field at the offset, unboxing primitive values. */
+	static void set (Object object, Field field, long offset, Object value) {
+		Class type = field.getType();
+		if (!type.isPrimitive()) {
+			if (value != null && !type.isInstance(value))
+				throw new IllegalArgumentException("Value of type " + value.getClass().getName() + " cannot be assigned to field: "
+					+ field);
+			unsafe.putObject(object, offset, value);
+		} else if (type == int.class)
+			unsafe.putInt(object, offset, (Integer)value);
+		else if (type == long.class)
+			unsafe.putLong(object, offset, (Long)value);
+		else if (type == float.class)
+			unsafe.putFloat(object, offset, (Float)value);
+		else if (type == double.class)
+			unsafe.putDouble(object, offset, (Double)value);
+		else if (type == boolean.class)
+			unsafe.putBoolean(object, offset, (Boolean)value);
+		else if (type == byte.class)
+			unsafe.putByte(object, offset, (Byte)value);
+		else if (type == char.class)
+			unsafe.putChar(object, offset, (Character)value);
+		else
+			unsafe.putShort(object, offset, (Short)value);
+	}
+}
@@ -1,12 +1,15 @@
-
 package com.esotericsoftware.kryo.util;
 
-/** An unordered map where the values are ints. This implementation is a cuckoo hash map using 3 hashes, random walking, and a
- * small stash for problematic keys. Null keys are not allowed. No allocation is done except when growing the table size. <br>
+/** An unordered map where the keys are compared by identity and the values are ints. This implementation is a cuckoo hash map
+ * using 3 hashes, random walking, and a small stash for problematic keys. Null keys are not allowed. No allocation is done except
+ * when growing the table size. <br>
  * <br>
  * This map performs very fast get, containsKey, and remove (typically O(1), worst case O(log(n))). Put may be a bit slower,
  * depending on hash collisions. Load factors greater than 0.91 greatly increase the chances the map will have to rehash to the
- * next higher POT size.
+ * next higher POT size. <br>
+ * <br>
+ * The buckets filled since the last clear are recorded, so {@link #clear()} only visits those buckets and is O(n) in the number
+ * of entries rather than in the capacity. Use {@link #clear(int)} to also release the backing table if it has grown large.
  * @author Nathan Sweet */
 public class IdentityObjectIntMap<K> {
 	private static final int PRIME1 = 0xbe1f14b1;
@@ -18,6 +21,10 @@ public class IdentityObjectIntMap<K> {
 	K[] keyTable;
 	int[] valueTable;
 	int capacity, stashSize;
+	/** The indices of the buckets filled since the last clear. If more buckets are filled than the capacity, which can only happen
+	 * when entries are removed and buckets reused, usedCount is -1 and clear visits every bucket. */
+	int[] usedIndices;
+	int usedCount;
 
 	private float loadFactor;
 	private int hashShift, mask, threshold;
@@ -54,95 +61,93 @@ public class IdentityObjectIntMap<K> {
 
 		keyTable = (K[])new Object[capacity + stashCapacity];
 		valueTable = new int[keyTable.length];
+		usedIndices = new int[capacity];
 	}
 
 	public void put (K key, int value) {
 		if (key == null) throw new IllegalArgumentException("key cannot be null.");
+		K[] keyTable = this.keyTable;
 
 		// Check for existing keys.
 		int hashCode = System.identityHashCode(key);
 		int index1 = hashCode & mask;
-		K key1 = keyTable[index1];
-		if (key.equals(key1)) {
-			int oldValue = valueTable[index1];
+		boolean empty1 = keyTable[index1] == null;
+		if (!empty1 && keyTable[index1] == key) {
 			valueTable[index1] = value;
 			return;
 		}
 
 		int index2 = hash2(hashCode);
-		K key2 = keyTable[index2];
-		if (key.equals(key2)) {
-			int oldValue = valueTable[index2];
+		boolean empty2 = keyTable[index2] == null;
+		if (!empty2 && keyTable[index2] == key) {
 			valueTable[index2] = value;
 			return;
 		}
 
 		int index3 = hash3(hashCode);
-		K key3 = keyTable[index3];
-		if (key.equals(key3)) {
-			int oldValue = valueTable[index3];
+		boolean empty3 = keyTable[index3] == null;
+		if (!empty3 && keyTable[index3] == key) {
 			valueTable[index3] = value;
 			return;
 		}
 
 		// Check for empty buckets.
-		if (key1 == null) {
-			keyTable[index1] = key;
-			valueTable[index1] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (empty1) {
+			store(index1, key, value);
 			return;
 		}
 
-		if (key2 == null) {
-			keyTable[index2] = key;
-			valueTable[index2] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (empty2) {
+			store(index2, key, value);
 			return;
 		}
 
-		if (key3 == null) {
-			keyTable[index3] = key;
-			valueTable[index3] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (empty3) {
+			store(index3, key, value);
 			return;
 		}
 
-		push(key, value, index1, key1, index2, key2, index3, key3);
-		return;
+		push(key, value, index1, keyTable[index1], index2, keyTable[index2], index3, keyTable[index3]);
 	}
 
 	/** Skips checks for existing keys. */
 	private void putResize (K key, int value) {
+		K[] keyTable = this.keyTable;
+
 		// Check for empty buckets.
 		int hashCode = System.identityHashCode(key);
 		int index1 = hashCode & mask;
-		K key1 = keyTable[index1];
-		if (key1 == null) {
-			keyTable[index1] = key;
-			valueTable[index1] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (keyTable[index1] == null) {
+			store(index1, key, value);
 			return;
 		}
 
 		int index2 = hash2(hashCode);
-		K key2 = keyTable[index2];
-		if (key2 == null) {
-			keyTable[index2] = key;
-			valueTable[index2] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (keyTable[index2] == null) {
+			store(index2, key, value);
 			return;
 		}
 
 		int index3 = hash3(hashCode);
-		K key3 = keyTable[index3];
-		if (key3 == null) {
-			keyTable[index3] = key;
-			valueTable[index3] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (keyTable[index3] == null) {
+			store(index3, key, value);
 			return;
 		}
 
-		push(key, value, index1, key1, index2, key2, index3, key3);
+		push(key, value, index1, keyTable[index1], index2, keyTable[index2], index3, keyTable[index3]);
+	}
+
+	/** Stores the key and value in an empty bucket. */
+	private void store (int index, K key, int value) {
+		keyTable[index] = key;
+		valueTable[index] = value;
+		if (usedCount != -1) {
+			if (usedCount < usedIndices.length)
+				usedIndices[usedCount++] = index;
+			else
+				usedCount = -1;
+		}
+		if (size++ >= threshold) resize(capacity << 1);
 	}
 
 	private void push (K insertKey, int insertValue, int index1, K key1, int index2, K key2, int index3, K key3) {
@@ -180,31 +185,25 @@ public class IdentityObjectIntMap<K> {
 			// If the evicted key hashes to an empty bucket, put it there and stop.
 			int hashCode = System.identityHashCode(evictedKey);
 			index1 = hashCode & mask;
-			key1 = keyTable[index1];
-			if (key1 == null) {
-				keyTable[index1] = evictedKey;
-				valueTable[index1] = evictedValue;
-				if (size++ >= threshold) resize(capacity << 1);
+			if (keyTable[index1] == null) {
+				store(index1, evictedKey, evictedValue);
 				return;
 			}
+			key1 = keyTable[index1];
 
 			index2 = hash2(hashCode);
-			key2 = keyTable[index2];
-			if (key2 == null) {
-				keyTable[index2] = evictedKey;
-				valueTable[index2] = evictedValue;
-				if (size++ >= threshold) resize(capacity << 1);
+			if (keyTable[index2] == null) {
+				store(index2, evictedKey, evictedValue);
 				return;
 			}
+			key2 = keyTable[index2];
 
 			index3 = hash3(hashCode);
-			key3 = keyTable[index3];
-			if (key3 == null) {
-				keyTable[index3] = evictedKey;
-				valueTable[index3] = evictedValue;
-				if (size++ >= threshold) resize(capacity << 1);
+			if (keyTable[index3] == null) {
+				store(index3, evictedKey, evictedValue);
 				return;
 			}
+			key3 = keyTable[index3];
 
 			if (++i == pushIterations) break;
 
@@ -225,7 +224,7 @@ public class IdentityObjectIntMap<K> {
 		// Update key in the stash.
 		K[] keyTable = this.keyTable;
 		for (int i = capacity, n = i + stashSize; i < n; i++) {
-			if (key.equals(keyTable[i])) {
+			if (keyTable[i] == key) {
 				valueTable[i] = value;
 				return;
 			}
@@ -235,98 +234,60 @@ public class IdentityObjectIntMap<K> {
 		keyTable[index] = key;
 		valueTable[index] = value;
 		stashSize++;
+		size++;
 	}
 
 	/** @param defaultValue Returned if the key was not associated with a value. */
 	public int get (K key, int defaultValue) {
+		int index = find(key);
+		if (index == -1) return defaultValue;
+		return valueTable[index];
+	}
+
+	/** Returns the index of the key in the table or stash, or -1. */
+	private int find (K key) {
 		int hashCode = System.identityHashCode(key);
 		int index = hashCode & mask;
-		if (!key.equals(keyTable[index])) {
+		if (keyTable[index] != key) {
 			index = hash2(hashCode);
-			if (!key.equals(keyTable[index])) {
+			if (keyTable[index] != key) {
 				index = hash3(hashCode);
-				if (!key.equals(keyTable[index])) return getStash(key, defaultValue);
+				if (keyTable[index] != key) return findStash(key);
 			}
 		}
-		return valueTable[index];
+		return index;
 	}
 
-	private int getStash (K key, int defaultValue) {
+	private int findStash (K key) {
 		K[] keyTable = this.keyTable;
 		for (int i = capacity, n = i + stashSize; i < n; i++)
-			if (key.equals(keyTable[i])) return valueTable[i];
-		return defaultValue;
+			if (keyTable[i] == key) return i;
+		return -1;
 	}
 
 	/** Returns the key's current value and increments the stored value. If the key is not in the map, defaultValue + increment is
 	 * put into the map. */
 	public int getAndIncrement (K key, int defaultValue, int increment) {
-		int hashCode = System.identityHashCode(key);
-		int index = hashCode & mask;
-		if (!key.equals(keyTable[index])) {
-			index = hash2(hashCode);
-			if (!key.equals(keyTable[index])) {
-				index = hash3(hashCode);
-				if (!key.equals(keyTable[index])) return getAndIncrementStash(key, defaultValue, increment);
-			}
+		int index = find(key);
+		if (index == -1) {
+			put(key, defaultValue + increment);
+			return defaultValue;
 		}
 		int value = valueTable[index];
 		valueTable[index] = value + increment;
 		return value;
 	}
 
-	private int getAndIncrementStash (K key, int defaultValue, int increment) {
-		K[] keyTable = this.keyTable;
-		for (int i = capacity, n = i + stashSize; i < n; i++)
-			if (key.equals(keyTable[i])) {
-				int value = valueTable[i];
-				valueTable[i] = value + increment;
-				return value;
-			}
-		put(key, defaultValue + increment);
-		return defaultValue;
-	}
-
 	public int remove (K key, int defaultValue) {
-		int hashCode = System.identityHashCode(key);
-		int index = hashCode & mask;
-		if (key.equals(keyTable[index])) {
+		int index = find(key);
+		if (index == -1) return defaultValue;
+		int oldValue = valueTable[index];
+		if (index >= capacity)
+			removeStashIndex(index);
+		else
 			keyTable[index] = null;
-			int oldValue = valueTable[index];
-			size--;
-			return oldValue;
-		}
-
-		index = hash2(hashCode);
-		if (key.equals(keyTable[index])) {
-			keyTable[index] = null;
-			int oldValue = valueTable[index];
-			size--;
-			return oldValue;
-		}
-
-		index = hash3(hashCode);
-		if (key.equals(keyTable[index])) {
-			keyTable[index] = null;
-			int oldValue = valueTable[index];
-			size--;
-			return oldValue;
-		}
-
-		return removeStash(key, defaultValue);
-	}
-
-	int removeStash (K key, int defaultValue) {
-		K[] keyTable = this.keyTable;
-		for (int i = capacity, n = i + stashSize; i < n; i++) {
-			if (key.equals(keyTable[i])) {
-				int oldValue = valueTable[i];
-				removeStashIndex(i);
-				size--;
-				return oldValue;
-			}
-		}
-		return defaultValue;
+		size--;
+		return oldValue;
 	}
 
 	void removeStashIndex (int index) {
@@ -337,54 +298,66 @@ public class IdentityObjectIntMap<K> {
 			keyTable[index] = keyTable[lastIndex];
 			valueTable[index] = valueTable[lastIndex];
 		}
+		keyTable[lastIndex] = null;
 	}
 
+	/** Removes all entries, only visiting the buckets filled since the last clear so the time taken depends on the number of
+	 * entries rather than the capacity. */
 	public void clear () {
 		K[] keyTable = this.keyTable;
-		int[] valueTable = this.valueTable;
-		for (int i = capacity + stashSize; i-- > 0;) {
-			keyTable[i] = null;
+		if (usedCount == -1) {
+			for (int i = capacity + stashSize; i-- > 0;)
+				keyTable[i] = null;
+		} else {
+			int[] usedIndices = this.usedIndices;
+			for (int i = usedCount; i-- > 0;)
+				keyTable[usedIndices[i]] = null;
+			for (int i = capacity + stashSize; i-- > capacity;)
+				keyTable[i] = null;
+		}
+		usedCount = 0;
+		size = 0;
+		stashSize = 0;
+	}
+
+	/** Removes all entries. If the backing table is larger than the specified capacity, it is replaced with a table of that
+	 * capacity, releasing all references to keys. Otherwise this is the same as {@link #clear()}. This allows a map that grew
+	 * for an unusually large number of entries to shrink back down. */
+	public void clear (int maximumCapacity) {
+		maximumCapacity = ObjectMap.nextPowerOfTwo(maximumCapacity);
+		if (capacity <= maximumCapacity) {
+			clear();
+			return;
 		}
 		size = 0;
 		stashSize = 0;
+		capacity = 0;
+		resize(maximumCapacity);
 	}
 
 	/** Returns true if the specified value is in the map. Note this traverses the entire map and compares every value, which may be
 	 * an expensive operation. */
 	public boolean containsValue (int value) {
-		int[] valueTable = this.valueTable;
-		for (int i = capacity + stashSize; i-- > 0;)
-			if (valueTable[i] == value) return true;
-		return false;
+		return findIndex(value) != -1;
 	}
 
 	public boolean containsKey (K key) {
-		int hashCode = System.identityHashCode(key);
-		int index = hashCode & mask;
-		if (!key.equals(keyTable[index])) {
-			index = hash2(hashCode);
-			if (!key.equals(keyTable[index])) {
-				index = hash3(hashCode);
-				if (!key.equals(keyTable[index])) return containsKeyStash(key);
-			}
-		}
-		return true;
-	}
-
-	private boolean containsKeyStash (K key) {
-		K[] keyTable = this.keyTable;
-		for (int i = capacity, n = i + stashSize; i < n; i++)
-			if (key.equals(keyTable[i])) return true;
-		return false;
+		return find(key) != -1;
 	}
 
 	/** Returns the key for the specified value, or null if it is not in the map. Note this traverses the entire map and compares
 	 * every value, which may be an expensive operation. */
 	public K findKey (int value) {
+		int index = findIndex(value);
+		return index == -1 ? null : keyTable[index];
+	}
+
+	private int findIndex (int value) {
+		K[] keyTable = this.keyTable;
 		int[] valueTable = this.valueTable;
 		for (int i = capacity + stashSize; i-- > 0;)
-			if (valueTable[i] == value) return keyTable[i];
-		return null;
+			if (keyTable[i] != null && valueTable[i] == value) return i;
+		return -1;
 	}
 
 	/** Increases the size of the backing array to acommodate the specified number of additional items. Useful before adding many
@@ -409,6 +382,8 @@ public class IdentityObjectIntMap<K> {
 
 		keyTable = (K[])new Object[newSize + stashCapacity];
 		valueTable = new int[newSize + stashCapacity];
+		usedIndices = new int[newSize];
+		usedCount = 0;
 
 		size = 0;
 		stashSize = 0;
@@ -434,20 +409,10 @@ public class IdentityObjectIntMap<K> {
 		buffer.append('{');
 		K[] keyTable = this.keyTable;
 		int[] valueTable = this.valueTable;
-		int i = keyTable.length;
-		while (i-- > 0) {
-			K key = keyTable[i];
-			if (key == null) continue;
-			buffer.append(key);
-			buffer.append('=');
-			buffer.append(valueTable[i]);
-			break;
-		}
-		while (i-- > 0) {
-			K key = keyTable[i];
-			if (key == null) continue;
-			buffer.append(", ");
-			buffer.append(key);
+		for (int i = 0, n = capacity + stashSize; i < n; i++) {
+			if (keyTable[i] == null) continue;
+			if (buffer.length() > 1) buffer.append(", ");
+			buffer.append(keyTable[i]);
 			buffer.append('=');
 			buffer.append(valueTable[i]);
 		}
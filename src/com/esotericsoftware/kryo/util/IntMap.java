@@ -21,7 +21,10 @@ package com.esotericsoftware.kryo.util;
  * <br>
  * This map performs very fast get, containsKey, and remove (typically O(1), worst case O(log(n))). Put may be a bit slower,
  * depending on hash collisions. Load factors greater than 0.91 greatly increase the chances the map will have to rehash to the
- * next higher POT size.
+ * next higher POT size. <br>
+ * <br>
+ * The buckets filled since the last clear are recorded, so {@link #clear()} only visits those buckets and is O(n) in the number
+ * of entries rather than in the capacity. Use {@link #clear(int)} to also release the backing table if it has grown large.
  * @author Nathan Sweet */
 public class IntMap<V> {
 	private static final int PRIME1 = 0xbe1f14b1;
@@ -34,6 +37,10 @@ public class IntMap<V> {
 	int[] keyTable;
 	V[] valueTable;
 	int capacity, stashSize;
+	/** The indices of the buckets filled since the last clear. If more buckets are filled than the capacity, which can only happen
+	 * when entries are removed and buckets reused, usedCount is -1 and clear visits every bucket. */
+	int[] usedIndices;
+	int usedCount;
 	V zeroValue;
 	boolean hasZeroValue;
 
@@ -72,6 +79,7 @@ public class IntMap<V> {
 
 		keyTable = new int[capacity + stashCapacity];
 		valueTable = (V[])new Object[keyTable.length];
+		usedIndices = new int[capacity];
 	}
 
 	public V put (int key, V value) {
@@ -83,54 +91,50 @@ public class IntMap<V> {
 			return oldValue;
 		}
 
+		int[] keyTable = this.keyTable;
+
 		// Check for existing keys.
 		int index1 = key & mask;
-		int key1 = keyTable[index1];
-		if (key1 == key) {
+		boolean empty1 = keyTable[index1] == EMPTY;
+		if (!empty1 && keyTable[index1] == key) {
 			V oldValue = valueTable[index1];
 			valueTable[index1] = value;
 			return oldValue;
 		}
 
 		int index2 = hash2(key);
-		int key2 = keyTable[index2];
-		if (key2 == key) {
+		boolean empty2 = keyTable[index2] == EMPTY;
+		if (!empty2 && keyTable[index2] == key) {
 			V oldValue = valueTable[index2];
 			valueTable[index2] = value;
 			return oldValue;
 		}
 
 		int index3 = hash3(key);
-		int key3 = keyTable[index3];
-		if (key3 == key) {
+		boolean empty3 = keyTable[index3] == EMPTY;
+		if (!empty3 && keyTable[index3] == key) {
 			V oldValue = valueTable[index3];
 			valueTable[index3] = value;
 			return oldValue;
 		}
 
 		// Check for empty buckets.
-		if (key1 == EMPTY) {
-			keyTable[index1] = key;
-			valueTable[index1] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (empty1) {
+			store(index1, key, value);
 			return null;
 		}
 
-		if (key2 == EMPTY) {
-			keyTable[index2] = key;
-			valueTable[index2] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (empty2) {
+			store(index2, key, value);
 			return null;
 		}
 
-		if (key3 == EMPTY) {
-			keyTable[index3] = key;
-			valueTable[index3] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (empty3) {
+			store(index3, key, value);
 			return null;
 		}
 
-		push(key, value, index1, key1, index2, key2, index3, key3);
+		push(key, value, index1, keyTable[index1], index2, keyTable[index2], index3, keyTable[index3]);
 		return null;
 	}
 
@@ -142,35 +146,41 @@ public class IntMap<V> {
 			return;
 		}
 
+		int[] keyTable = this.keyTable;
+
 		// Check for empty buckets.
 		int index1 = key & mask;
-		int key1 = keyTable[index1];
-		if (key1 == EMPTY) {
-			keyTable[index1] = key;
-			valueTable[index1] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (keyTable[index1] == EMPTY) {
+			store(index1, key, value);
 			return;
 		}
 
 		int index2 = hash2(key);
-		int key2 = keyTable[index2];
-		if (key2 == EMPTY) {
-			keyTable[index2] = key;
-			valueTable[index2] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (keyTable[index2] == EMPTY) {
+			store(index2, key, value);
 			return;
 		}
 
 		int index3 = hash3(key);
-		int key3 = keyTable[index3];
-		if (key3 == EMPTY) {
-			keyTable[index3] = key;
-			valueTable[index3] = value;
-			if (size++ >= threshold) resize(capacity << 1);
+		if (keyTable[index3] == EMPTY) {
+			store(index3, key, value);
 			return;
 		}
 
-		push(key, value, index1, key1, index2, key2, index3, key3);
+		push(key, value, index1, keyTable[index1], index2, keyTable[index2], index3, keyTable[index3]);
+	}
+
+	/** Stores the key and value in an empty bucket. */
+	private void store (int index, int key, V value) {
+		keyTable[index] = key;
+		valueTable[index] = value;
+		if (usedCount != -1) {
+			if (usedCount < usedIndices.length)
+				usedIndices[usedCount++] = index;
+			else
+				usedCount = -1;
+		}
+		if (size++ >= threshold) resize(capacity << 1);
 	}
 
 	private void push (int insertKey, V insertValue, int index1, int key1, int index2, int key2, int index3, int key3) {
@@ -207,31 +217,25 @@ public class IntMap<V> {
 
 			// If the evicted key hashes to an empty bucket, put it there and stop.
 			index1 = evictedKey & mask;
-			key1 = keyTable[index1];
-			if (key1 == EMPTY) {
-				keyTable[index1] = evictedKey;
-				valueTable[index1] = evictedValue;
-				if (size++ >= threshold) resize(capacity << 1);
+			if (keyTable[index1] == EMPTY) {
+				store(index1, evictedKey, evictedValue);
 				return;
 			}
+			key1 = keyTable[index1];
 
 			index2 = hash2(evictedKey);
-			key2 = keyTable[index2];
-			if (key2 == EMPTY) {
-				keyTable[index2] = evictedKey;
-				valueTable[index2] = evictedValue;
-				if (size++ >= threshold) resize(capacity << 1);
+			if (keyTable[index2] == EMPTY) {
+				store(index2, evictedKey, evictedValue);
 				return;
 			}
+			key2 = keyTable[index2];
 
 			index3 = hash3(evictedKey);
-			key3 = keyTable[index3];
-			if (key3 == EMPTY) {
-				keyTable[index3] = evictedKey;
-				valueTable[index3] = evictedValue;
-				if (size++ >= threshold) resize(capacity << 1);
+			if (keyTable[index3] == EMPTY) {
+				store(index3, evictedKey, evictedValue);
 				return;
 			}
+			key3 = keyTable[index3];
 
 			if (++i == pushIterations) break;
 
@@ -262,39 +266,41 @@ public class IntMap<V> {
 		keyTable[index] = key;
 		valueTable[index] = value;
 		stashSize++;
+		size++;
 	}
 
 	public V get (int key) {
 		if (key == 0) return zeroValue;
-		int index = key & mask;
-		if (keyTable[index] != key) {
-			index = hash2(key);
-			if (keyTable[index] != key) {
-				index = hash3(key);
-				if (keyTable[index] != key) return getStash(key, null);
-			}
-		}
+		int index = find(key);
+		if (index == -1) return null;
 		return valueTable[index];
 	}
 
 	public V get (int key, V defaultValue) {
-		if (key == 0) return zeroValue;
+		if (key == 0) return hasZeroValue ? zeroValue : defaultValue;
+		int index = find(key);
+		if (index == -1) return defaultValue;
+		return valueTable[index];
+	}
+
+	/** Returns the index of the non-zero key in the table or stash, or -1. */
+	private int find (int key) {
 		int index = key & mask;
 		if (keyTable[index] != key) {
 			index = hash2(key);
 			if (keyTable[index] != key) {
 				index = hash3(key);
-				if (keyTable[index] != key) return getStash(key, defaultValue);
+				if (keyTable[index] != key) return findStash(key);
 			}
 		}
-		return valueTable[index];
+		return index;
 	}
 
-	private V getStash (int key, V defaultValue) {
+	private int findStash (int key) {
 		int[] keyTable = this.keyTable;
 		for (int i = capacity, n = i + stashSize; i < n; i++)
-			if (keyTable[i] == key) return valueTable[i];
-		return defaultValue;
+			if (keyTable[i] == key) return i;
+		return -1;
 	}
 
 	public V remove (int key) {
@@ -307,47 +313,17 @@ public class IntMap<V> {
 			return oldValue;
 		}
 
-		int index = key & mask;
-		if (keyTable[index] == key) {
+		int index = find(key);
+		if (index == -1) return null;
+		V oldValue = valueTable[index];
+		if (index >= capacity)
+			removeStashIndex(index);
+		else {
 			keyTable[index] = EMPTY;
-			V oldValue = valueTable[index];
 			valueTable[index] = null;
-			size--;
-			return oldValue;
 		}
-
-		index = hash2(key);
-		if (keyTable[index] == key) {
-			keyTable[index] = EMPTY;
-			V oldValue = valueTable[index];
-			valueTable[index] = null;
-			size--;
-			return oldValue;
-		}
-
-		index = hash3(key);
-		if (keyTable[index] == key) {
-			keyTable[index] = EMPTY;
-			V oldValue = valueTable[index];
-			valueTable[index] = null;
-			size--;
-			return oldValue;
-		}
-
-		return removeStash(key);
-	}
-
-	V removeStash (int key) {
-		int[] keyTable = this.keyTable;
-		for (int i = capacity, n = i + stashSize; i < n; i++) {
-			if (keyTable[i] == key) {
-				V oldValue = valueTable[i];
-				removeStashIndex(i);
-				size--;
-				return oldValue;
-			}
-		}
-		return null;
+		size--;
+		return oldValue;
 	}
 
 	void removeStashIndex (int index) {
@@ -362,60 +338,75 @@ public class IntMap<V> {
 			valueTable[index] = null;
 	}
 
+	/** Removes all entries, only visiting the buckets filled since the last clear so the time taken depends on the number of
+	 * entries rather than the capacity. */
 	public void clear () {
 		int[] keyTable = this.keyTable;
 		V[] valueTable = this.valueTable;
-		for (int i = capacity + stashSize; i-- > 0;) {
-			keyTable[i] = EMPTY;
-			valueTable[i] = null;
+		if (usedCount == -1) {
+			for (int i = capacity + stashSize; i-- > 0;) {
+				keyTable[i] = EMPTY;
+				valueTable[i] = null;
+			}
+		} else {
+			int[] usedIndices = this.usedIndices;
+			for (int i = usedCount; i-- > 0;) {
+				int index = usedIndices[i];
+				keyTable[index] = EMPTY;
+				valueTable[index] = null;
+			}
+			for (int i = capacity + stashSize; i-- > capacity;)
+				valueTable[i] = null;
 		}
+		usedCount = 0;
 		size = 0;
 		stashSize = 0;
 		zeroValue = null;
 		hasZeroValue = false;
 	}
 
+	/** Removes all entries. If the backing table is larger than the specified capacity, it is replaced with a table of that
+	 * capacity, releasing all references to values. Otherwise this is the same as {@link #clear()}. This allows a map that grew
+	 * for an unusually large number of entries to shrink back down. */
+	public void clear (int maximumCapacity) {
+		maximumCapacity = ObjectMap.nextPowerOfTwo(maximumCapacity);
+		if (capacity <= maximumCapacity) {
+			clear();
+			return;
+		}
+		size = 0;
+		stashSize = 0;
+		zeroValue = null;
+		hasZeroValue = false;
+		capacity = 0;
+		resize(maximumCapacity);
+	}
+
 	/** Returns true if the specified value is in the map. Note this traverses the entire map and compares every value, which may be
 	 * an expensive operation.
 	 * @param identity If true, uses == to compare the specified value with values in the map. If false, uses
 	 *           {@link #equals(Object)}. */
 	public boolean containsValue (Object value, boolean identity) {
-		V[] valueTable = this.valueTable;
-		if (value == null) {
-			if (hasZeroValue && zeroValue == null) return true;
-			int[] keyTable = this.keyTable;
-			for (int i = capacity + stashSize; i-- > 0;)
-				if (keyTable[i] != EMPTY && valueTable[i] == null) return true;
-		} else if (identity) {
-			if (value == zeroValue) return true;
-			for (int i = capacity + stashSize; i-- > 0;)
-				if (valueTable[i] == value) return true;
-		} else {
-			if (hasZeroValue && value.equals(zeroValue)) return true;
-			for (int i = capacity + stashSize; i-- > 0;)
-				if (value.equals(valueTable[i])) return true;
+		if (hasZeroValue) {
+			if (value == null ? zeroValue == null : (identity ? value == zeroValue : value.equals(zeroValue))) return true;
 		}
-		return false;
+		return findIndex(value, identity) != -1;
 	}
 
-	public boolean containsKey (int key) {
-		if (key == 0) return hasZeroValue;
-		int index = key & mask;
-		if (keyTable[index] != key) {
-			index = hash2(key);
-			if (keyTable[index] != key) {
-				index = hash3(key);
-				if (keyTable[index] != key) return containsKeyStash(key);
-			}
+	private int findIndex (Object value, boolean identity) {
+		int[] keyTable = this.keyTable;
+		V[] valueTable = this.valueTable;
+		for (int i = capacity + stashSize; i-- > 0;) {
+			if (keyTable[i] == EMPTY) continue;
+			Object other = valueTable[i];
+			if (value == null ? other == null : (identity ? value == other : value.equals(other))) return i;
 		}
-		return true;
+		return -1;
 	}
 
-	private boolean containsKeyStash (int key) {
-		int[] keyTable = this.keyTable;
-		for (int i = capacity, n = i + stashSize; i < n; i++)
-			if (keyTable[i] == key) return true;
-		return false;
+	public boolean containsKey (int key) {
+		if (key == 0) return hasZeroValue;
+		return find(key) != -1;
 	}
 
 	/** Returns the key for the specified value, or <tt>notFound</tt> if it is not in the map. Note this traverses the entire map
@@ -423,22 +414,11 @@ public class IntMap<V> {
 	 * @param identity If true, uses == to compare the specified value with values in the map. If false, uses
 	 *           {@link #equals(Object)}. */
 	public int findKey (Object value, boolean identity, int notFound) {
-		V[] valueTable = this.valueTable;
-		if (value == null) {
-			if (hasZeroValue && zeroValue == null) return 0;
-			int[] keyTable = this.keyTable;
-			for (int i = capacity + stashSize; i-- > 0;)
-				if (keyTable[i] != EMPTY && valueTable[i] == null) return keyTable[i];
-		} else if (identity) {
-			if (value == zeroValue) return 0;
-			for (int i = capacity + stashSize; i-- > 0;)
-				if (valueTable[i] == value) return keyTable[i];
-		} else {
-			if (hasZeroValue && value.equals(zeroValue)) return 0;
-			for (int i = capacity + stashSize; i-- > 0;)
-				if (value.equals(valueTable[i])) return keyTable[i];
+		if (hasZeroValue) {
+			if (value == null ? zeroValue == null : (identity ? value == zeroValue : value.equals(zeroValue))) return 0;
 		}
-		return notFound;
+		int index = findIndex(value, identity);
+		return index == -1 ? notFound : keyTable[index];
 	}
 
 	/** Increases the size of the backing array to acommodate the specified number of additional items. Useful before adding many
@@ -463,6 +443,8 @@ public class IntMap<V> {
 
 		keyTable = new int[newSize + stashCapacity];
 		valueTable = (V[])new Object[newSize + stashCapacity];
+		usedIndices = new int[newSize];
+		usedCount = 0;
 
 		size = hasZeroValue ? 1 : 0;
 		stashSize = 0;
@@ -488,20 +470,14 @@ public class IntMap<V> {
 		buffer.append('[');
 		int[] keyTable = this.keyTable;
 		V[] valueTable = this.valueTable;
-		int i = keyTable.length;
-		while (i-- > 0) {
-			int key = keyTable[i];
-			if (key == EMPTY) continue;
-			buffer.append(key);
-			buffer.append('=');
-			buffer.append(valueTable[i]);
-			break;
+		if (hasZeroValue) {
+			buffer.append("0=");
+			buffer.append(zeroValue);
 		}
-		while (i-- > 0) {
-			int key = keyTable[i];
-			if (key == EMPTY) continue;
-			buffer.append(", ");
-			buffer.append(key);
+		for (int i = 0, n = capacity + stashSize; i < n; i++) {
+			if (keyTable[i] == EMPTY) continue;
+			if (buffer.length() > 1) buffer.append(", ");
+			buffer.append(keyTable[i]);
 			buffer.append('=');
 			buffer.append(valueTable[i]);
 		}
@@ -0,0 +1,106 @@
+package com.esotericsoftware.kryo.util;
+
+import java.util.ArrayList;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.ReferenceResolver;
+
+/** Uses an {@link IdentityObjectIntMap} to track written objects. Read objects are stored in an array per class indexed by ID, so
+ * looking up and storing a read object does not allocate, except when an array needs to grow. The arrays are kept between object
+ * graphs and only the slots that were used are cleared by {@link #reset()}. Clearing the written objects only visits the buckets
+ * that were used, and storage that grew beyond {@link #setMaximumCapacity(int) the maximum capacity} for an unusually large
+ * object graph is released on reset. */
+public class MapReferenceResolver implements ReferenceResolver {
+	private final IdentityObjectIntMap writtenObjects = new IdentityObjectIntMap();
+	private final IdentityObjectIntMap<Class> nextWrittenIds = new IdentityObjectIntMap();
+
+	private final ObjectMap<Class, ReadObjects> classToReadObjects = new ObjectMap();
+	private final ArrayList<ReadObjects> usedReadObjects = new ArrayList();
+	private Class lastReadType;
+	private ReadObjects lastReadObjects;
+	private int maximumCapacity = 2048;
+
+	public int getWrittenId (Object object) {
+		return writtenObjects.get(object, -1);
+	}
+
+	public int addWrittenObject (Object object) {
+		int id = nextWrittenIds.getAndIncrement(object.getClass(), 1, 1);
+		writtenObjects.put(object, id);
+		return id;
+	}
+
+	public Object getReadObject (Class type, int id) {
+		ReadObjects readObjects = getReadObjects(type);
+		if (readObjects == null || id < 0 || id >= readObjects.objects.length) return null;
+		return readObjects.objects[id];
+	}
+
+	/** @throws KryoException if the ID is not the next ID expected for the type, so a corrupt or malicious ID read from the input
+	 *            cannot cause a large array to be allocated. */
+	public void addReadObject (Class type, int id, Object object) {
+		ReadObjects readObjects = getReadObjects(type);
+		int maxId = readObjects == null ? 0 : readObjects.maxId;
+		if (id < 1 || id > maxId + 1)
+			throw new KryoException("Invalid reference ID " + id + " for class " + type.getName() + ", expected: " + (maxId + 1));
+		if (readObjects == null) {
+			readObjects = new ReadObjects();
+			classToReadObjects.put(type, readObjects);
+			lastReadType = type;
+			lastReadObjects = readObjects;
+		}
+		Object[] objects = readObjects.objects;
+		if (id >= objects.length) {
+			Object[] newObjects = new Object[Math.max(id + 1, objects.length * 2)];
+			System.arraycopy(objects, 0, newObjects, 0, objects.length);
+			readObjects.objects = objects = newObjects;
+		}
+		objects[id] = object;
+		if (readObjects.maxId == 0) usedReadObjects.add(readObjects);
+		if (id > readObjects.maxId) readObjects.maxId = id;
+	}
+
+	private ReadObjects getReadObjects (Class type) {
+		if (type == lastReadType) return lastReadObjects;
+		ReadObjects readObjects = classToReadObjects.get(type);
+		if (readObjects != null) {
+			lastReadType = type;
+			lastReadObjects = readObjects;
+		}
+		return readObjects;
+	}
+
+	public void reset () {
+		writtenObjects.clear(maximumCapacity);
+		nextWrittenIds.clear(maximumCapacity);
+		for (int i = 0, n = usedReadObjects.size(); i < n; i++) {
+			ReadObjects readObjects = usedReadObjects.get(i);
+			Object[] objects = readObjects.objects;
+			if (objects.length > maximumCapacity)
+				readObjects.objects = new Object[16];
+			else {
+				for (int ii = readObjects.maxId; ii > 0; ii--)
+					objects[ii] = null;
+			}
+			readObjects.maxId = 0;
+		}
+		usedReadObjects.clear();
+	}
+
+	/** Sets the number of entries that storage is allowed to retain between object graphs. Storage that grows larger during an
+	 * object graph is released by {@link #reset()}. Default is 2048. */
+	public void setMaximumCapacity (int maximumCapacity) {
+		if (maximumCapacity < 1) throw new IllegalArgumentException("maximumCapacity must be > 0: " + maximumCapacity);
+		this.maximumCapacity = maximumCapacity;
+	}
+
+	public int getMaximumCapacity () {
+		return maximumCapacity;
+	}
+
+	static private final class ReadObjects {
+		Object[] objects = new Object[16];
+		/** The largest ID stored since the last reset, or 0 if none. */
+		int maxId;
+	}
+}
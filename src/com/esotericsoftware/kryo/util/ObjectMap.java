@@ -336,6 +336,7 @@ public class ObjectMap<K, V> {
 	}
 
 	public void clear () {
+		if (size == 0) return;
 		K[] keyTable = this.keyTable;
 		V[] valueTable = this.valueTable;
 		for (int i = capacity + stashSize; i-- > 0;) {
@@ -346,6 +347,21 @@ public class ObjectMap<K, V> {
 		stashSize = 0;
 	}
 
+	/** Removes all entries. If the backing table is larger than the specified capacity, it is replaced with a table of that
+	 * capacity. Otherwise this is the same as {@link #clear()}. This allows a map that grew for an unusually large number of entries
+	 * to shrink back down. */
+	public void clear (int maximumCapacity) {
+		maximumCapacity = nextPowerOfTwo(maximumCapacity);
+		if (capacity <= maximumCapacity) {
+			clear();
+			return;
+		}
+		size = 0;
+		stashSize = 0;
+		capacity = 0;
+		resize(maximumCapacity);
+	}
+
 	/** Returns true if the specified value is in the map. Note this traverses the entire map and compares every value, which may be
 	 * an expensive operation.
 	 * @param identity If true, uses == to compare the specified value with values in the map. If false, uses
@@ -1,7 +1,11 @@
 
 package com.esotericsoftware.kryo;
 
+import java.util.Arrays;
+
 import com.esotericsoftware.kryo.serializers.ArraySerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.DoubleSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.LongSerializer;
 
 /** @author Nathan Sweet <misc@n4te.com> */
 public class ArraySerializerTest extends KryoTestCase {
@@ -11,15 +15,15 @@ public class ArraySerializerTest extends KryoTestCase {
 		kryo.register(int[][][].class);
 		kryo.register(String[].class);
 		kryo.register(Object[].class);
-		roundTrip(7, new int[] {1, 2, 3, 4});
-		roundTrip(8, new int[] {1, 2, -100, 4});
-		roundTrip(10, new int[] {1, 2, -100, 40000});
+		roundTrip(18, new int[] {1, 2, 3, 4});
+		roundTrip(18, new int[] {1, 2, -100, 4});
+		roundTrip(18, new int[] {1, 2, -100, 40000});
 		roundTrip(11, new int[][] { {1, 2}, {100, 4}});
 		roundTrip(13, new int[][] { {1}, {2}, {100}, {4}});
 		roundTrip(16, new int[][][] { { {1}, {2}}, { {100}, {4}}});
 		roundTrip(15, new String[] {"11", "2222", "3", "4"});
 		roundTrip(14, new String[] {"11", "2222", null, "4"});
-		roundTrip(35,
+		roundTrip(46,
 			new Object[] {new String[] {"11", "2222", null, "4"}, new int[] {1, 2, 3, 4}, new int[][] { {1, 2}, {100, 4}}});
 
 		ArraySerializer serializer = new ArraySerializer();
@@ -51,4 +55,34 @@ public class ArraySerializerTest extends KryoTestCase {
 		array[3] = new float[] {3.0f};
 		roundTrip(28, array);
 	}
+
+	public void testMultiDimensionalArrays () {
+		kryo.register(double[][].class);
+		kryo.register(long[][].class);
+		kryo.register(boolean[][].class);
+		kryo.register(byte[][].class);
+		kryo.register(char[][].class);
+		kryo.register(short[][].class);
+		kryo.register(int[][][].class);
+		kryo.register(String[][].class);
+		kryo.register(Object[][].class);
+		kryo.register(Integer[].class);
+		roundTrip(38, new double[][] { {1.5, 2}, {3, 4}});
+		roundTrip(14, new long[][] { {1, -1}, {1l << 40}});
+		roundTrip(9, new boolean[][] { {true}, {false, true}});
+		roundTrip(9, new byte[][] { {1, 2, 3}, null});
+		roundTrip(7, new char[][] {{'a'}});
+		roundTrip(14, new short[][] { {1, 2}, {3, 4}});
+		roundTrip(16, new int[][][] { { {1, 2}, {3}}, { {4, 5, 6}}});
+		roundTrip(13, new String[][] { {"a", null}, {"bc"}, null});
+		roundTrip(14, new Object[][] { {"a", 1}, new Integer[] {2, null}});
+
+		// The rows of primitive arrays are written with the same bytes as writing each element.
+		byte[] bytes = write(new double[][] { {1.5, 2}, {3, 4}});
+		kryo.register(double.class, new DoubleSerializer() {});
+		assertTrue(Arrays.equals(bytes, write(new double[][] { {1.5, 2}, {3, 4}})));
+		bytes = write(new long[][] { {1, -1}, {1l << 40}});
+		kryo.register(long.class, new LongSerializer() {});
+		assertTrue(Arrays.equals(bytes, write(new long[][] { {1, -1}, {1l << 40}})));
+	}
 }
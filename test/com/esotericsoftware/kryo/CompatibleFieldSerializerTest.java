@@ -3,7 +3,10 @@ package com.esotericsoftware.kryo;
 
 import java.io.FileNotFoundException;
 
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.StringSerializer;
 
 /** @author Nathan Sweet <misc@n4te.com> */
 public class CompatibleFieldSerializerTest extends KryoTestCase {
@@ -35,6 +38,49 @@ public class CompatibleFieldSerializerTest extends KryoTestCase {
 		assertEquals(object1, object2);
 	}
 
+	public void testMultipleClasses () {
+		kryo.register(TestClass.class, new CompatibleFieldSerializer(kryo, TestClass.class));
+		kryo.register(AnotherClass.class, new CompatibleFieldSerializer(kryo, AnotherClass.class));
+		AnotherClass object1 = new AnotherClass();
+		object1.value = new TestClass();
+		object1.value.child = new TestClass();
+		roundTrip(94, object1);
+	}
+
+	public void testRegistry () {
+		kryo.register(TestClass.class, new CompatibleFieldSerializer(kryo, TestClass.class));
+		Kryo kryo1 = new Kryo(kryo), kryo2 = new Kryo(kryo);
+		final int[] writes = new int[1];
+		kryo2.register(String.class, new StringSerializer() {
+			public void write (Kryo kryo, Output output, String object) {
+				writes[0]++;
+				super.write(kryo, output, object);
+			}
+		});
+
+		TestClass object1 = new TestClass();
+		object1.child = new TestClass();
+		Output output = new Output(1024);
+		kryo1.writeClassAndObject(output, object1);
+		assertEquals(0, writes[0]);
+
+		// The String serializer registered with kryo2 is used, not the one kryo1 looked up through the shared serializer.
+		output.clear();
+		kryo2.writeClassAndObject(output, object1);
+		assertEquals(2, writes[0]);
+		assertEquals(object1, kryo1.readClassAndObject(new Input(output.toBytes())));
+	}
+
+	static public class AnotherClass {
+		public TestClass value;
+
+		public boolean equals (Object obj) {
+			if (!(obj instanceof AnotherClass)) return false;
+			AnotherClass other = (AnotherClass)obj;
+			return value == null ? other.value == null : value.equals(other.value);
+		}
+	}
+
 	static public class TestClass {
 		public String text = "something";
 		public int moo = 120;
@@ -9,6 +9,10 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.IntArraySerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.LongArraySerializer;
 import com.esotericsoftware.kryo.serializers.String7Serializer;
 import com.esotericsoftware.kryo.serializers.String8Serializer;
 
@@ -102,8 +106,8 @@ public class DefaultSerializersTest extends KryoTestCase {
 
 	public void testString () {
 		kryo.setReferences(true);
-		roundTrip(7, "meow");
-		roundTrip(69, "abcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdef");
+		roundTrip(6, "meow");
+		roundTrip(68, "abcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdef");
 
 		kryo.setReferences(false);
 		roundTrip(6, "meow");
@@ -120,8 +124,8 @@ public class DefaultSerializersTest extends KryoTestCase {
 		kryo.register(String.class, new String8Serializer());
 
 		kryo.setReferences(true);
-		roundTrip(7, "meow");
-		roundTrip(69, "abcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdef");
+		roundTrip(6, "meow");
+		roundTrip(68, "abcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdef");
 
 		kryo.setReferences(false);
 		roundTrip(6, "meow");
@@ -136,8 +140,8 @@ public class DefaultSerializersTest extends KryoTestCase {
 		kryo.register(String.class, new String7Serializer());
 
 		kryo.setReferences(true);
-		roundTrip(6, "meow");
-		roundTrip(68, "abcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdef");
+		roundTrip(5, "meow");
+		roundTrip(67, "abcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdefabcdef");
 
 		kryo.setReferences(false);
 		roundTrip(5, "meow");
@@ -158,6 +162,39 @@ public class DefaultSerializersTest extends KryoTestCase {
 		roundTrip(1, null);
 	}
 
+	public void testPrimitiveArraySerializers () {
+		kryo.register(int[].class);
+		kryo.register(long[].class);
+		kryo.register(short[].class);
+		kryo.register(float[].class);
+		kryo.register(double[].class);
+		kryo.register(char[].class);
+		kryo.register(boolean[].class);
+		roundTrip(2, new int[0]);
+		roundTrip(18, new int[] {1, 2, -100, 40000});
+		roundTrip(26, new long[] {1, -1, 1l << 40});
+		roundTrip(8, new short[] {1, -2, 30000});
+		roundTrip(10, new float[] {1.5f, -2});
+		roundTrip(10, new double[] {-1.5d});
+		roundTrip(6, new char[] {'a', 'Z'});
+		roundTrip(5, new boolean[] {true, false, true});
+
+		((IntArraySerializer)kryo.getSerializer(int[].class)).setVariableLength(true);
+		((LongArraySerializer)kryo.getSerializer(long[].class)).setVariableLength(true);
+		roundTrip(9, new int[] {1, 2, -100, 40000});
+		roundTrip(10, new long[] {1, -1, 1l << 40});
+
+		Output output = new Output(16);
+		kryo.writeObjectOrNull(output, null, kryo.getSerializer(int[].class));
+		kryo.writeObjectOrNull(output, null, kryo.getSerializer(double[].class));
+		kryo.writeObjectOrNull(output, null, kryo.getSerializer(boolean[].class));
+		assertEquals(3, output.position());
+		Input input = new Input(output.toBytes());
+		assertNull(kryo.readObjectOrNull(input, int[].class));
+		assertNull(kryo.readObjectOrNull(input, double[].class));
+		assertNull(kryo.readObjectOrNull(input, boolean[].class));
+	}
+
 	public void testDateSerializer () {
 		kryo.register(Date.class);
 		roundTrip(2, new Date(0));
@@ -189,7 +226,7 @@ public class DefaultSerializersTest extends KryoTestCase {
 		// 57 bytes for the class name characters
 		// 1 byte for the reference id
 		// 1 byte for the enum value
-		roundTrip(62, TestEnum.c);
+		roundTrip(61, TestEnum.c);
 	}
 
 	public void testEnumSerializerWithMethods () {
@@ -200,7 +237,7 @@ public class DefaultSerializersTest extends KryoTestCase {
 
 		kryo = new Kryo();
 		kryo.setRegistrationRequired(false);
-		roundTrip(75, TestEnumWithMethods.c);
+		roundTrip(74, TestEnumWithMethods.c);
 	}
 
 	public void testCollectionsMethods () {
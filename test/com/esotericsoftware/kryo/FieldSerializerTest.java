@@ -8,6 +8,7 @@ import org.objenesis.strategy.StdInstantiatorStrategy;
 
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.LongSerializer;
 import com.esotericsoftware.kryo.serializers.FieldSerializer;
 import com.esotericsoftware.kryo.serializers.FieldSerializer.Optional;
 
@@ -106,7 +107,7 @@ public class FieldSerializerTest extends KryoTestCase {
 		test.byteArrayField = new byte[] {2, 1, 0, -1, -2};
 
 		kryo = new Kryo();
-		roundTrip(146, test);
+		roundTrip(142, test);
 
 		C c = new C();
 		c.a = new A();
@@ -116,7 +117,7 @@ public class FieldSerializerTest extends KryoTestCase {
 		c.d = new D();
 		c.d.e = new E();
 		c.d.e.f = new F();
-		roundTrip(68, c);
+		roundTrip(64, c);
 	}
 
 	public void testReferences () {
@@ -131,12 +132,12 @@ public class FieldSerializerTest extends KryoTestCase {
 		c.d.e.f.a = c.a;
 
 		kryo = new Kryo();
-		roundTrip(68, c);
+		roundTrip(64, c);
 		C c2 = (C)object2;
 		assertTrue(c2.a == c2.d.e.f.a);
 
 		// Test reset clears unregistered class names.
-		roundTrip(68, c);
+		roundTrip(64, c);
 		c2 = (C)object2;
 		assertTrue(c2.a == c2.d.e.f.a);
 
@@ -148,7 +149,7 @@ public class FieldSerializerTest extends KryoTestCase {
 		kryo.register(D.class);
 		kryo.register(E.class);
 		kryo.register(F.class);
-		roundTrip(19, c);
+		roundTrip(15, c);
 		c2 = (C)object2;
 		assertTrue(c2.a == c2.d.e.f.a);
 	}
@@ -271,7 +272,7 @@ public class FieldSerializerTest extends KryoTestCase {
 		roundTrip(71, new HasOptionalAnnotation());
 		kryo = new Kryo();
 		kryo.getContext().put("smurf", null);
-		roundTrip(73, new HasOptionalAnnotation());
+		roundTrip(72, new HasOptionalAnnotation());
 	}
 
 	public void testCyclicGrgaph () throws Exception {
@@ -280,7 +281,119 @@ public class FieldSerializerTest extends KryoTestCase {
 		kryo.setReferences(true);
 		DefaultTypes test = new DefaultTypes();
 		test.child = test;
-		roundTrip(39, test);
+		roundTrip(35, test);
+	}
+
+	public void testGeneratedSerializer () {
+		DefaultTypes test = new DefaultTypes();
+		test.booleanField = true;
+		test.byteField = -123;
+		test.charField = 'Z';
+		test.shortField = -12345;
+		test.intField = -123456;
+		test.longField = 123456789123l;
+		test.floatField = 123.456f;
+		test.doubleField = -1.23456d;
+		test.IntegerField = 123;
+		test.hasStringField = new HasStringField();
+		test.hasStringField.text = "moo";
+		runGeneratedSerializerTest(test);
+		test.StringField = "stringvalue";
+		test.child = new DefaultTypes();
+		test.child.StringField = "child";
+		runGeneratedSerializerTest(test);
+	}
+
+	private void runGeneratedSerializerTest (DefaultTypes test) {
+		for (int i = 0; i < 4; i++) {
+			kryo = new Kryo();
+			kryo.setReferences(i % 2 == 0);
+			kryo.register(DefaultTypes.class);
+			kryo.register(byte[].class);
+			kryo.register(HasStringField.class);
+			FieldSerializer serializer = (FieldSerializer)kryo.getSerializer(DefaultTypes.class);
+			if (i >= 2) {
+				// Fields that can't be generated are serialized by FieldSerializer.
+				serializer.getField("intField").setCanBeNull(true);
+				serializer.getField("longField").setSerializer(new LongSerializer());
+			}
+			serializer.setUseAsm(false);
+			byte[] reflected = write(test);
+			serializer.setUseAsm(true);
+			byte[] generated = write(test);
+			assertTrue(Arrays.equals(reflected, generated));
+			roundTrip(generated.length, test);
+		}
+	}
+
+	public void testGeneratedSerializerUseReferences () {
+		kryo = new Kryo() {
+			protected boolean useReferences (Class type) {
+				return type == String.class || super.useReferences(type);
+			}
+		};
+		kryo.register(HasPublicStrings.class);
+		HasPublicStrings test = new HasPublicStrings();
+		test.a = test.b = new String("abc");
+		write(test);
+		HasPublicStrings copy = (HasPublicStrings)kryo.readClassAndObject(input);
+		assertEquals("abc", copy.a);
+		assertSame(copy.a, copy.b);
+	}
+
+	public void testPrimitiveFields () {
+		kryo.register(HasPrimitiveFields.class);
+		HasPrimitiveFields test = new HasPrimitiveFields();
+		test.a = true;
+		test.b = -12;
+		test.c = 'X';
+		test.d = -1.5d;
+		test.f = 123.456f;
+		test.i = -123456;
+		test.l = 123456789123l;
+		test.s = 12345;
+		roundTrip(28, test);
+
+		// The fields are private, so they are not accessed by a generated class but still written without boxing.
+		Output expected = new Output(64);
+		kryo.writeClass(expected, HasPrimitiveFields.class);
+		expected.writeBoolean(test.a);
+		expected.writeByte(test.b);
+		expected.writeChar(test.c);
+		expected.writeDouble(test.d);
+		expected.writeFloat(test.f);
+		expected.writeInt(test.i, false);
+		expected.writeLong(test.l, false);
+		expected.writeShort(test.s);
+		assertTrue(Arrays.equals(expected.toBytes(), write(test)));
+
+		FieldSerializer serializer = (FieldSerializer)kryo.getSerializer(HasPrimitiveFields.class);
+		serializer.getField("i").setCanBeNull(true);
+		roundTrip(29, test);
+
+		// A Kryo that overrides useReferences writes the references it asks for.
+		kryo = new Kryo() {
+			protected boolean useReferences (Class type) {
+				return type == Integer.class || super.useReferences(type);
+			}
+		};
+		kryo.register(HasPrimitiveFields.class);
+		// A reference ID for the object and for the int field.
+		assertEquals(expected.toBytes().length + 2, write(test).length);
+		write(test);
+		assertEquals(test, kryo.readClassAndObject(input));
+	}
+
+	public void testFinalFields () {
+		kryo.register(HasFinalFields.class);
+		kryo.register(int[].class);
+		HasFinalFields test = new HasFinalFields(123, "moo", new int[] {1, 2, 3});
+		test.child = new HasFinalFields(-1, null, null);
+		roundTrip(25, test);
+
+		FieldSerializer serializer = (FieldSerializer)kryo.getSerializer(HasFinalFields.class);
+		serializer.getField("number").setCanBeNull(true);
+		roundTrip(27, test);
 	}
 
 	public void testInstantiatorStrategy () {
@@ -549,6 +662,49 @@ public class FieldSerializerTest extends KryoTestCase {
 		}
 	}
 
+	static class HasPrimitiveFields {
+		private boolean a;
+		private byte b;
+		private char c;
+		private double d;
+		private float f;
+		private int i;
+		private long l;
+		private short s;
+
+		public boolean equals (Object obj) {
+			if (!(obj instanceof HasPrimitiveFields)) return false;
+			HasPrimitiveFields other = (HasPrimitiveFields)obj;
+			return a == other.a && b == other.b && c == other.c && d == other.d && f == other.f && i == other.i && l == other.l
+				&& s == other.s;
+		}
+	}
+
+	static class HasFinalFields {
+		private final int number;
+		private final String text;
+		protected final int[] values;
+		HasFinalFields child;
+
+		public HasFinalFields () {
+			this(0, null, null);
+		}
+
+		public HasFinalFields (int number, String text, int[] values) {
+			this.number = number;
+			this.text = text;
+			this.values = values;
+		}
+
+		public boolean equals (Object obj) {
+			if (!(obj instanceof HasFinalFields)) return false;
+			HasFinalFields other = (HasFinalFields)obj;
+			if (number != other.number || !Arrays.equals(values, other.values)) return false;
+			if (text == null ? other.text != null : !text.equals(other.text)) return false;
+			return child == null ? other.child == null : child.equals(other.child);
+		}
+	}
+
 	static public class HasStringField {
 		public String text;
 
@@ -564,6 +720,10 @@ public class FieldSerializerTest extends KryoTestCase {
 		}
 	}
 
+	static public class HasPublicStrings {
+		public String a, b;
+	}
+
 	static public class HasOptionalAnnotation {
 		@Optional("smurf") int moo;
 
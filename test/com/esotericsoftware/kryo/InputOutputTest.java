@@ -3,10 +3,33 @@ package com.esotericsoftware.kryo;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.esotericsoftware.kryo.io.AsyncInput;
+import com.esotericsoftware.kryo.io.AsyncOutput;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.io.ChannelInput;
+import com.esotericsoftware.kryo.io.ChannelOutput;
+import com.esotericsoftware.kryo.io.FrameDecoder;
 import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.MappedFileInput;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.io.SegmentedOutput;
 
 /** @author Nathan Sweet <misc@n4te.com> */
 public class InputOutputTest extends KryoTestCase {
@@ -71,6 +94,7 @@ public class InputOutputTest extends KryoTestCase {
 
 	public void testUTF () throws IOException {
 		runUTFTest(new Output(4096));
+		runUTFTest(new ByteBufferOutput(16, -1));
 		runUTFTest(new Output(400));
 		runUTFTest(new Output(new ByteArrayOutputStream()));
 
@@ -111,7 +135,7 @@ public class InputOutputTest extends KryoTestCase {
 		write.writeString7(null);
 		write.writeString7(value1);
 
-		Input read = new Input(write.toBytes());
+		Input read = newInput(write);
 		assertEquals("", read.readString());
 		assertEquals("1", read.readString());
 		assertEquals("22", read.readString());
@@ -211,6 +235,7 @@ public class InputOutputTest extends KryoTestCase {
 
 	public void testInts () throws IOException {
 		runIntTest(new Output(4096));
+		runIntTest(new ByteBufferOutput(16, -1));
 		runIntTest(new Output(new ByteArrayOutputStream()));
 	}
 
@@ -277,7 +302,7 @@ public class InputOutputTest extends KryoTestCase {
 		assertEquals(5, write.writeInt(-134217729, false));
 		assertEquals(5, write.writeInt(-134217729, true));
 
-		Input read = new Input(write.toBytes());
+		Input read = newInput(write);
 		assertEquals(0, read.readInt());
 		assertEquals(63, read.readInt());
 		assertEquals(64, read.readInt());
@@ -347,6 +372,7 @@ public class InputOutputTest extends KryoTestCase {
 
 	public void testLongs () throws IOException {
 		runLongTest(new Output(4096));
+		runLongTest(new ByteBufferOutput(16, -1));
 		runLongTest(new Output(new ByteArrayOutputStream()));
 	}
 
@@ -413,7 +439,7 @@ public class InputOutputTest extends KryoTestCase {
 		assertEquals(5, write.writeLong(-134217729, false));
 		assertEquals(10, write.writeLong(-134217729, true));
 
-		Input read = new Input(write.toBytes());
+		Input read = newInput(write);
 		assertEquals(0, read.readLong());
 		assertEquals(63, read.readLong());
 		assertEquals(64, read.readLong());
@@ -479,6 +505,7 @@ public class InputOutputTest extends KryoTestCase {
 
 	public void testShorts () throws IOException {
 		runShortTest(new Output(4096));
+		runShortTest(new ByteBufferOutput(16, -1));
 		runShortTest(new Output(new ByteArrayOutputStream()));
 	}
 
@@ -525,7 +552,7 @@ public class InputOutputTest extends KryoTestCase {
 		assertEquals(3, write.writeShort(-8192, false));
 		assertEquals(3, write.writeShort(-8192, true));
 
-		Input read = new Input(write.toBytes());
+		Input read = newInput(write);
 		assertEquals(0, read.readShort());
 		assertEquals(63, read.readShort());
 		assertEquals(64, read.readShort());
@@ -571,6 +598,7 @@ public class InputOutputTest extends KryoTestCase {
 
 	public void testFloats () throws IOException {
 		runFloatTest(new Output(4096));
+		runFloatTest(new ByteBufferOutput(16, -1));
 		runFloatTest(new Output(new ByteArrayOutputStream()));
 	}
 
@@ -617,7 +645,7 @@ public class InputOutputTest extends KryoTestCase {
 		assertEquals(4, write.writeFloat(-8192, 1000, false));
 		assertEquals(5, write.writeFloat(-8192, 1000, true));
 
-		Input read = new Input(write.toBytes());
+		Input read = newInput(write);
 		assertEquals(read.readFloat(), 0f);
 		assertEquals(read.readFloat(), 63f);
 		assertEquals(read.readFloat(), 64f);
@@ -663,6 +691,7 @@ public class InputOutputTest extends KryoTestCase {
 
 	public void testDoubles () throws IOException {
 		runDoubleTest(new Output(4096));
+		runDoubleTest(new ByteBufferOutput(16, -1));
 		runDoubleTest(new Output(new ByteArrayOutputStream()));
 	}
 
@@ -710,7 +739,7 @@ public class InputOutputTest extends KryoTestCase {
 		assertEquals(10, write.writeDouble(-8192, 1000, true));
 		write.writeDouble(1.23456d);
 
-		Input read = new Input(write.toBytes());
+		Input read = newInput(write);
 		assertEquals(read.readDouble(), 0d);
 		assertEquals(read.readDouble(), 63d);
 		assertEquals(read.readDouble(), 64d);
@@ -757,6 +786,7 @@ public class InputOutputTest extends KryoTestCase {
 
 	public void testBooleans () throws IOException {
 		runBooleanTest(new Output(4096));
+		runBooleanTest(new ByteBufferOutput(16, -1));
 		runBooleanTest(new Output(new ByteArrayOutputStream()));
 	}
 
@@ -766,7 +796,7 @@ public class InputOutputTest extends KryoTestCase {
 			write.writeBoolean(false);
 		}
 
-		Input read = new Input(write.toBytes());
+		Input read = newInput(write);
 		for (int i = 0; i < 100; i++) {
 			assertEquals(true, read.readBoolean());
 			assertEquals(false, read.readBoolean());
@@ -775,6 +805,7 @@ public class InputOutputTest extends KryoTestCase {
 
 	public void testChars () throws IOException {
 		runCharTest(new Output(4096));
+		runCharTest(new ByteBufferOutput(16, -1));
 		runCharTest(new Output(new ByteArrayOutputStream()));
 	}
 
@@ -789,7 +820,7 @@ public class InputOutputTest extends KryoTestCase {
 		write.writeChar((char)32767);
 		write.writeChar((char)65535);
 
-		Input read = new Input(write.toBytes());
+		Input read = newInput(write);
 		assertEquals(0, read.readChar());
 		assertEquals(63, read.readChar());
 		assertEquals(64, read.readChar());
@@ -800,4 +831,602 @@ public class InputOutputTest extends KryoTestCase {
 		assertEquals(32767, read.readChar());
 		assertEquals(65535, read.readChar());
 	}
+
+	public void testByteBuffers () throws IOException {
+		Kryo kryo = new Kryo();
+		ArrayList list = new ArrayList();
+		list.add("abc\u1234");
+		list.add(12345);
+		list.add(-123456789012L);
+		list.add(new int[] {1, 2, 3});
+
+		// Grows the direct buffer from 16 bytes.
+		ByteBufferOutput output = new ByteBufferOutput(16, -1);
+		kryo.writeClassAndObject(output, list);
+		assertTrue(output.getByteBuffer().isDirect());
+		byte[] bytes = output.toBytes();
+
+		// The same bytes are written as by Output.
+		Output heapOutput = new Output(1024);
+		kryo.writeClassAndObject(heapOutput, list);
+		assertEquals(heapOutput.toBytes().length, bytes.length);
+		assertEquals(new String(heapOutput.toBytes(), "ISO-8859-1"), new String(bytes, "ISO-8859-1"));
+
+		ByteBuffer buffer = output.getByteBuffer();
+		buffer.flip();
+		ByteBufferInput input = new ByteBufferInput(buffer);
+		ArrayList copy = (ArrayList)kryo.readClassAndObject(input);
+		assertEquals(list.get(0), copy.get(0));
+		assertEquals(list.get(2), copy.get(2));
+		assertEquals(3, ((int[])copy.get(3))[2]);
+		assertEquals(bytes.length, input.total());
+
+		try {
+			new ByteBufferOutput(4).writeLong(1);
+			fail();
+		} catch (KryoException expected) {
+		}
+	}
+
+	public void testArrays () throws IOException {
+		runArraysTest(new Output(4096));
+		runArraysTest(new ByteBufferOutput(16, -1));
+
+		// Values that span buffer boundaries are written and read through a stream.
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		Output output = new Output(outStream, 10);
+		writeArrays(output);
+		output.flush();
+		assertEquals(writeArrays(new Output(4096)).length, outStream.size());
+		assertArrays(new Input(new ByteArrayInputStream(outStream.toByteArray()), 10));
+	}
+
+	private void runArraysTest (Output write) {
+		writeArrays(write);
+		assertArrays(newInput(write));
+	}
+
+	private byte[] writeArrays (Output write) {
+		write.writeShorts(new short[] {0, -1, 32767, -32768}, 0, 4);
+		write.writeInts(new int[] {9, 1, 2, -3, 9}, 1, 3);
+		write.writeLongs(new long[] {0, Long.MIN_VALUE, Long.MAX_VALUE}, 0, 3);
+		write.writeFloats(new float[] {0, 1.5f, -Float.MAX_VALUE}, 0, 3);
+		write.writeDoubles(new double[] {0, 1.5, -Double.MAX_VALUE}, 0, 3);
+		write.writeChars(new char[] {'a', '\u1234', 65535}, 0, 3);
+		write.writeInts(new int[] {0, 127, 128, -1, Integer.MAX_VALUE, Integer.MIN_VALUE}, 0, 6, true);
+		write.writeInts(new int[] {0, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE}, 0, 6, false);
+		write.writeLongs(new long[] {0, 127, -1, Long.MAX_VALUE, Long.MIN_VALUE}, 0, 5, true);
+		write.writeLongs(new long[] {0, 63, -64, Long.MAX_VALUE, Long.MIN_VALUE}, 0, 5, false);
+		// The bulk methods write the same bytes as the scalar methods.
+		write.writeInt(-3);
+		write.writeInt(128, true);
+		write.writeLong(-1, false);
+		return write.toBytes();
+	}
+
+	private void assertArrays (Input read) {
+		assertEquals(-32768, read.readShorts(4)[3]);
+		int[] ints = new int[5];
+		read.readInts(ints, 1, 3);
+		assertEquals(0, ints[0]);
+		assertEquals(1, ints[1]);
+		assertEquals(-3, ints[3]);
+		assertEquals(0, ints[4]);
+		long[] longs = read.readLongs(3);
+		assertEquals(Long.MIN_VALUE, longs[1]);
+		assertEquals(Long.MAX_VALUE, longs[2]);
+		assertEquals(-Float.MAX_VALUE, read.readFloats(3)[2]);
+		assertEquals(1.5, read.readDoubles(3)[1]);
+		char[] chars = read.readChars(3);
+		assertEquals('\u1234', chars[1]);
+		assertEquals(65535, chars[2]);
+		ints = read.readInts(6, true);
+		assertEquals(128, ints[2]);
+		assertEquals(-1, ints[3]);
+		assertEquals(Integer.MIN_VALUE, ints[5]);
+		ints = read.readInts(6, false);
+		assertEquals(-64, ints[2]);
+		assertEquals(Integer.MAX_VALUE, ints[4]);
+		longs = read.readLongs(5, true);
+		assertEquals(-1, longs[2]);
+		assertEquals(Long.MIN_VALUE, longs[4]);
+		longs = read.readLongs(5, false);
+		assertEquals(-64, longs[2]);
+		assertEquals(Long.MAX_VALUE, longs[3]);
+		assertEquals(-3, read.readInt());
+		assertEquals(128, read.readInt(true));
+		assertEquals(-1, read.readLong(false));
+	}
+
+	public void testSegmentedOutput () throws IOException {
+		Kryo kryo = new Kryo();
+		ArrayList list = new ArrayList();
+		list.add("a string longer than one segment \u1234");
+		list.add(new byte[100]);
+		list.add(-123456789012L);
+		list.add(new int[] {1, 2, 3});
+
+		Output heapOutput = new Output(1024);
+		kryo.writeClassAndObject(heapOutput, list);
+		byte[] bytes = heapOutput.toBytes();
+
+		SegmentedOutput output = new SegmentedOutput(16);
+		kryo.writeClassAndObject(output, list);
+		assertTrue(output.getSegmentCount() > 1);
+		assertEquals(bytes.length, output.total());
+		assertEquals(new String(bytes, "ISO-8859-1"), new String(output.toBytes(), "ISO-8859-1"));
+		// The position is in the current segment, like the position of any Output.
+		assertTrue(output.position() <= output.getBuffer().length);
+		assertEquals(bytes[bytes.length - 1], output.getBuffer()[output.position() - 1]);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		output.writeTo(outStream);
+		assertEquals(new String(bytes, "ISO-8859-1"), new String(outStream.toByteArray(), "ISO-8859-1"));
+
+		File file = File.createTempFile("kryo", ".bin");
+		file.deleteOnExit();
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		output.writeTo(randomAccessFile.getChannel());
+		randomAccessFile.close();
+		assertEquals(bytes.length, file.length());
+
+		// Segments are reused after clear.
+		output.clear();
+		assertEquals(0, output.total());
+		kryo.writeClassAndObject(output, list);
+		assertEquals(list.get(0), ((ArrayList)kryo.readClassAndObject(new Input(output.toBytes()))).get(0));
+
+		try {
+			new SegmentedOutput(4, 10).writeBytes(new byte[11]);
+			fail();
+		} catch (KryoException expected) {
+		}
+	}
+
+	public void testChannels () throws IOException {
+		Kryo kryo = new Kryo();
+		ArrayList list = new ArrayList();
+		list.add("abc\u1234");
+		list.add(new byte[100]);
+		list.add(-123456789012L);
+		Output heapOutput = new Output(1024);
+		kryo.writeClassAndObject(heapOutput, list);
+		final byte[] bytes = heapOutput.toBytes();
+
+		// A channel that accepts at most 7 bytes per write and initially accepts none.
+		final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		final int[] accept = new int[1];
+		ChannelOutput output = new ChannelOutput(new WritableByteChannel() {
+			public int write (ByteBuffer buffer) {
+				int count = Math.min(buffer.remaining(), accept[0]);
+				for (int i = 0; i < count; i++)
+					outStream.write(buffer.get());
+				return count;
+			}
+
+			public boolean isOpen () {
+				return true;
+			}
+
+			public void close () {
+			}
+		}, 16, -1);
+		kryo.writeClassAndObject(output, list);
+		output.flush();
+		assertEquals(bytes.length, output.position());
+		accept[0] = 7;
+		while (output.position() > 0)
+			output.flush();
+		assertEquals(bytes.length, output.total());
+		assertEquals(new String(bytes, "ISO-8859-1"), new String(outStream.toByteArray(), "ISO-8859-1"));
+
+		Pipe pipe = Pipe.open();
+		pipe.source().configureBlocking(false);
+		ChannelInput input = new ChannelInput(pipe.source(), 1024);
+		// A non-blocking read with no bytes available fails rather than waiting.
+		try {
+			input.readInt();
+			fail();
+		} catch (KryoException expected) {
+		}
+		output = new ChannelOutput(pipe.sink());
+		kryo.writeClassAndObject(output, list);
+		output.writeInt(1234);
+		output.flush();
+		assertEquals(0, output.position());
+		while (input.available() < bytes.length + 4)
+			input.receive();
+		ArrayList copy = (ArrayList)kryo.readClassAndObject(input);
+		assertEquals(list.get(0), copy.get(0));
+		assertEquals(list.get(2), copy.get(2));
+		assertEquals(1234, input.readInt());
+		assertEquals(bytes.length + 4, input.total());
+		output.close();
+		assertEquals(-1, input.read());
+		input.close();
+	}
+
+	public void testChannelOutputArrays () throws IOException {
+		long[] longs = new long[1000];
+		byte[] bytes = new byte[1000];
+		for (int i = 0; i < 1000; i++) {
+			longs[i] = i * 1234567891L;
+			bytes[i] = (byte)i;
+		}
+		Output heapOutput = new Output(16, -1);
+		heapOutput.writeLongs(longs, 0, longs.length);
+		heapOutput.writeBytes(bytes);
+
+		// Arrays larger than the buffer are written in chunks rather than growing the buffer.
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		ChannelOutput output = new ChannelOutput(Channels.newChannel(outStream), 16, -1);
+		output.writeLongs(longs, 0, longs.length);
+		output.writeBytes(bytes);
+		output.flush();
+		assertEquals(16, output.getByteBuffer().capacity());
+		assertEquals(heapOutput.total(), output.total());
+		assertEquals(new String(heapOutput.toBytes(), "ISO-8859-1"), new String(outStream.toByteArray(), "ISO-8859-1"));
+	}
+
+	public void testFrameDecoder () throws IOException {
+		Kryo kryo = new Kryo();
+		ArrayList list = new ArrayList();
+		list.add("abc\u1234");
+		list.add(new byte[200]);
+		list.add(-123456789012L);
+
+		Output output = new Output(1024);
+		Output frame = new Output(1024);
+		for (int i = 0; i < 3; i++) {
+			frame.clear();
+			kryo.writeClassAndObject(frame, list);
+			output.writeInt(frame.position(), true);
+			output.writeBytes(frame.getBuffer(), 0, frame.position());
+		}
+		byte[] bytes = output.toBytes();
+		int frameLength = frame.position();
+
+		// The bytes arrive one at a time. Frames are only returned once complete.
+		FrameDecoder decoder = new FrameDecoder(16, 1024);
+		assertEquals(1, decoder.needed());
+		assertNull(decoder.nextFrame());
+		int frames = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			decoder.add(bytes, i, 1);
+			if (i == 1) assertEquals(frameLength, decoder.needed());
+			Input input = decoder.nextFrame();
+			if (input == null) continue;
+			assertEquals(list.get(0), ((ArrayList)kryo.readClassAndObject(input)).get(0));
+			frames++;
+		}
+		assertEquals(3, frames);
+		assertEquals(0, decoder.available());
+
+		// All frames arrive at once.
+		Pipe pipe = Pipe.open();
+		pipe.sink().write(ByteBuffer.wrap(bytes));
+		pipe.sink().close();
+		while (decoder.receive(pipe.source()) != -1)
+			;
+		for (int i = 0; i < 3; i++)
+			assertEquals(list.get(2), ((ArrayList)kryo.readClassAndObject(decoder.nextFrame())).get(2));
+		assertNull(decoder.nextFrame());
+
+		decoder = new FrameDecoder(16, 100);
+		decoder.add(bytes, 0, 2);
+		try {
+			decoder.needed();
+			fail();
+		} catch (KryoException expected) {
+		}
+	}
+
+	public void testReservedLength () throws IOException {
+		runReservedLengthTest(new Output(8, -1));
+		runReservedLengthTest(new ByteBufferOutput(8, -1));
+		runReservedLengthTest(new SegmentedOutput(256));
+
+		// Reserved bytes in an earlier segment are padded.
+		SegmentedOutput segmented = new SegmentedOutput(8);
+		int reserved = segmented.reserveLength();
+		segmented.writeBytes(new byte[20]);
+		assertEquals(20, segmented.writeReservedLength(reserved, true));
+		assertEquals(25, segmented.total());
+		assertEquals(20, new Input(segmented.toBytes()).readInt(true));
+
+		Output output = new Output(new ByteArrayOutputStream(), 8);
+		reserved = output.reserveLength();
+		output.writeBytes(new byte[10]);
+		try {
+			output.writeReservedLength(reserved, true);
+			fail();
+		} catch (KryoException expected) {
+		}
+	}
+
+	private void runReservedLengthTest (Output write) {
+		int outer = write.reserveLength();
+		write.writeString("abc");
+		int inner = write.reserveLength();
+		write.writeBytes(new byte[200]);
+		write.writeInt(1234);
+		assertEquals(204, write.writeReservedLength(inner, true));
+		assertEquals(4 + 2 + 204, write.writeReservedLength(outer, false));
+		int empty = write.reserveLength();
+		assertEquals(0, write.writeReservedLength(empty, true));
+		write.writeInt(5678);
+		assertEquals(5 + 4 + 2 + 204 + 1 + 4, write.total());
+
+		Input read = newInput(write);
+		assertEquals(210, read.readInt(true));
+		assertEquals(5, read.total());
+		assertEquals("abc", read.readString());
+		assertEquals(204, read.readInt(true));
+		read.skip(200);
+		assertEquals(1234, read.readInt());
+		assertEquals(0, read.readInt(true));
+		assertEquals(5678, read.readInt());
+	}
+
+	public void testAsyncOutput () throws IOException {
+		Kryo kryo = new Kryo();
+		ArrayList list = new ArrayList();
+		list.add("abc\u1234");
+		list.add(new byte[100]);
+		list.add(-123456789012L);
+
+		Output output = new Output(1024, -1);
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		AsyncOutput asyncOutput = new AsyncOutput(outStream, 32, 3, null);
+		for (int i = 0; i < 100; i++) {
+			kryo.writeClassAndObject(output, list);
+			kryo.writeClassAndObject(asyncOutput, list);
+		}
+		asyncOutput.flush();
+		assertEquals(output.total(), asyncOutput.total());
+		assertEquals(new String(output.toBytes(), "ISO-8859-1"), new String(outStream.toByteArray(), "ISO-8859-1"));
+		asyncOutput.close();
+
+		// An exception from the OutputStream is thrown by a later write or flush.
+		asyncOutput = new AsyncOutput(new OutputStream() {
+			public void write (int b) throws IOException {
+				throw new IOException("Broken.");
+			}
+		}, 32);
+		try {
+			for (int i = 0; i < 100; i++)
+				kryo.writeClassAndObject(asyncOutput, list);
+			asyncOutput.flush();
+			fail();
+		} catch (KryoException expected) {
+			assertEquals("Broken.", expected.getCause().getMessage());
+		}
+		try {
+			asyncOutput.close();
+			fail();
+		} catch (KryoException expected) {
+		}
+
+		// The OutputStream is not closed until the writer thread is done, even when close fails to write the buffered bytes.
+		final AtomicBoolean writing = new AtomicBoolean(), closed = new AtomicBoolean(), misused = new AtomicBoolean();
+		final AtomicInteger writes = new AtomicInteger();
+		asyncOutput = new AsyncOutput(new OutputStream() {
+			public void write (int b) throws IOException {
+				write(new byte[] {(byte)b}, 0, 1);
+			}
+
+			public void write (byte[] bytes, int offset, int count) throws IOException {
+				if (closed.get()) misused.set(true);
+				writing.set(true);
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException ignored) {
+				}
+				writing.set(false);
+				writes.incrementAndGet();
+			}
+
+			public void close () {
+				if (writing.get()) misused.set(true);
+				closed.set(true);
+			}
+		}, 32, 4, null);
+		for (int i = 0; i < 100; i++)
+			asyncOutput.writeByte(i);
+		Thread.currentThread().interrupt();
+		try {
+			asyncOutput.close();
+			fail();
+		} catch (KryoException expected) {
+		}
+		assertFalse(misused.get());
+		// The 3 full buffers were written before close returned.
+		assertEquals(3, writes.get());
+
+		// Interrupting the writer thread, eg by an executor's shutdownNow, fails the waiting write instead of hanging it.
+		final CountDownLatch release = new CountDownLatch(1);
+		final Thread[] writerThread = new Thread[1];
+		final AsyncOutput stoppedOutput = new AsyncOutput(new OutputStream() {
+			public void write (int b) throws IOException {
+				write(new byte[] {(byte)b}, 0, 1);
+			}
+
+			public void write (byte[] bytes, int offset, int count) throws IOException {
+				// Ignores the interrupt but leaves it pending, like many streams do.
+				boolean interrupted = false;
+				while (true) {
+					try {
+						release.await();
+						break;
+					} catch (InterruptedException ex) {
+						interrupted = true;
+					}
+				}
+				if (interrupted) Thread.currentThread().interrupt();
+			}
+		}, 32, 2, new Executor() {
+			public void execute (Runnable command) {
+				writerThread[0] = new Thread(command, "AsyncOutput");
+				writerThread[0].setDaemon(true);
+				writerThread[0].start();
+			}
+		});
+		final AtomicBoolean failed = new AtomicBoolean();
+		Thread producer = new Thread() {
+			public void run () {
+				try {
+					for (int i = 0; i < 1000; i++)
+						stoppedOutput.writeByte(i);
+					stoppedOutput.flush();
+				} catch (KryoException expected) {
+					failed.set(true);
+				}
+			}
+		};
+		producer.setDaemon(true);
+		producer.start();
+		// Wait until the writer holds one buffer and the producer waits for it to be freed.
+		while (producer.getState() != Thread.State.TIMED_WAITING && producer.getState() != Thread.State.WAITING) {
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		writerThread[0].interrupt();
+		release.countDown();
+		try {
+			producer.join(5000);
+		} catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+		assertFalse(producer.isAlive());
+		assertTrue(failed.get());
+		try {
+			stoppedOutput.close();
+			fail();
+		} catch (KryoException expected) {
+		}
+	}
+
+	public void testAsyncInput () throws IOException {
+		Kryo kryo = new Kryo();
+		ArrayList list = new ArrayList();
+		list.add("abc\u1234");
+		list.add(new byte[100]);
+		list.add(-123456789012L);
+
+		Output output = new Output(1024, -1);
+		for (int i = 0; i < 100; i++)
+			kryo.writeClassAndObject(output, list);
+		output.writeLong(1234);
+		byte[] bytes = output.toBytes();
+
+		// Values span the boundaries of the buffers that are read ahead.
+		AsyncInput input = new AsyncInput(new ByteArrayInputStream(bytes), 13, 3, null);
+		for (int i = 0; i < 100; i++)
+			assertEquals(list.get(2), ((ArrayList)kryo.readClassAndObject(input)).get(2));
+		assertEquals(1234, input.readLong());
+		assertEquals(bytes.length, input.total());
+		input.close();
+
+		// An exception from the InputStream is thrown when the bytes are needed.
+		input = new AsyncInput(new InputStream() {
+			public int read () throws IOException {
+				throw new IOException("Broken.");
+			}
+		}, 16);
+		try {
+			input.readInt();
+			fail();
+		} catch (KryoException expected) {
+			assertEquals("Broken.", expected.getCause().getMessage());
+		}
+		input.close();
+
+		Input skipInput = new Input(new byte[10]);
+		assertEquals(4, skipInput.skip(4L));
+		assertEquals(4, skipInput.position());
+	}
+
+	public void testVarLongs () throws IOException {
+		// Every encoded length, both near the end of the buffer and with bytes following.
+		Output output = new Output(1024);
+		for (int bits = 0; bits <= 64; bits++) {
+			long value = bits == 0 ? 0 : -1L >>> 64 - bits;
+			output.writeLong(value, true);
+			output.writeLong(value, false);
+			output.writeLong(-value, false);
+		}
+		byte[] bytes = output.toBytes();
+		for (int bufferSize = 10; bufferSize <= 20; bufferSize += 10) {
+			Input[] inputs = {new Input(bytes), new Input(new ByteArrayInputStream(bytes), bufferSize)};
+			for (Input input : inputs) {
+				for (int bits = 0; bits <= 64; bits++) {
+					long value = bits == 0 ? 0 : -1L >>> 64 - bits;
+					assertEquals(value, input.readLong(true));
+					assertEquals(value, input.readLong(false));
+					assertEquals(-value, input.readLong(false));
+				}
+				assertEquals(bytes.length, input.total());
+			}
+		}
+	}
+
+	public void testMappedFile () throws IOException {
+		Kryo kryo = new Kryo();
+		File file = File.createTempFile("kryo", ".bin");
+		file.deleteOnExit();
+		FileOutputStream fileStream = new FileOutputStream(file);
+		Output output = new Output(fileStream);
+		int[] positions = new int[100];
+		for (int i = 0; i < 100; i++) {
+			positions[i] = output.total();
+			kryo.writeClassAndObject(output, "value \u1234 " + i);
+			output.writeLong(i * 1234567891L, false);
+		}
+		output.close();
+
+		// A small region size makes values span regions.
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		MappedFileInput input = new MappedFileInput(randomAccessFile.getChannel(), 0, file.length(), 17);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(positions[i], input.position());
+			assertEquals("value \u1234 " + i, kryo.readClassAndObject(input));
+			assertEquals(i * 1234567891L, input.readLong(false));
+		}
+		assertEquals(file.length(), input.longPosition());
+		try {
+			input.readByte();
+			fail();
+		} catch (KryoException expected) {
+		}
+
+		MappedFileInput input2 = new MappedFileInput(input);
+		input2.setPosition((long)positions[50]);
+		assertEquals("value \u1234 50", kryo.readClassAndObject(input2));
+		input.setPosition(positions[3]);
+		assertEquals("value \u1234 3", kryo.readClassAndObject(input));
+		try {
+			new MappedFileInput(randomAccessFile.getChannel(), 0, file.length(), 8);
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+		// The channel is not closed when it was not opened by the input.
+		assertTrue(randomAccessFile.getChannel().isOpen());
+		randomAccessFile.close();
+
+		input = new MappedFileInput(file);
+		assertEquals("value \u1234 0", kryo.readClassAndObject(input));
+		input.close();
+	}
+
+	private Input newInput (Output write) {
+		if (write instanceof ByteBufferOutput) {
+			ByteBuffer buffer = ((ByteBufferOutput)write).getByteBuffer();
+			buffer.flip();
+			return new ByteBufferInput(buffer);
+		}
+		return new Input(write.toBytes());
+	}
 }
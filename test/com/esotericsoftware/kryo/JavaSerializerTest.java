@@ -3,6 +3,8 @@ package com.esotericsoftware.kryo;
 
 import java.io.Serializable;
 
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.serializers.JavaSerializer;
 
 /** @author Nathan Sweet <misc@n4te.com> */
@@ -21,6 +23,18 @@ public class JavaSerializerTest extends KryoTestCase {
 		roundTrip(134, test);
 	}
 
+	public void testSameOutput () {
+		kryo.register(TestClass.class, new JavaSerializer());
+		TestClass test = new TestClass();
+		test.stringField = "fubar";
+		Output output = new Output(1024);
+		kryo.writeClassAndObject(output, test);
+		kryo.writeClassAndObject(output, test);
+		Input input = new Input(output.toBytes());
+		assertEquals(test, kryo.readClassAndObject(input));
+		assertEquals(test, kryo.readClassAndObject(input));
+	}
+
 	static public class TestClass implements Serializable {
 		String stringField;
 		int intField;
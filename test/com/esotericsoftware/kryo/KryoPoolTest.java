@@ -0,0 +1,95 @@
+package com.esotericsoftware.kryo;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.pool.KryoCallback;
+import com.esotericsoftware.kryo.pool.KryoFactory;
+import com.esotericsoftware.kryo.pool.KryoPool;
+
+public class KryoPoolTest extends KryoTestCase {
+	private final AtomicInteger created = new AtomicInteger();
+	private final KryoFactory factory = new KryoFactory() {
+		public Kryo create () {
+			created.incrementAndGet();
+			Kryo kryo = new Kryo();
+			kryo.setRegistrationRequired(true);
+			kryo.register(ArrayList.class);
+			return kryo;
+		}
+	};
+
+	public void testBorrowRelease () {
+		KryoPool pool = new KryoPool(factory);
+		Kryo kryo1 = pool.borrow();
+		Kryo kryo2 = pool.borrow();
+		assertNotSame(kryo1, kryo2);
+		assertEquals(2, created.get());
+		pool.release(kryo1);
+		assertEquals(1, pool.getIdleCount());
+		assertSame(kryo1, pool.borrow());
+		assertEquals(2, created.get());
+		pool.release(kryo1);
+		pool.release(kryo2);
+		pool.clear();
+		assertEquals(0, pool.getIdleCount());
+		pool.borrow();
+		assertEquals(3, created.get());
+	}
+
+	public void testMaxIdle () {
+		KryoPool pool = new KryoPool(factory, true, 2);
+		Kryo kryo1 = pool.borrow(), kryo2 = pool.borrow(), kryo3 = pool.borrow();
+		pool.release(kryo1);
+		pool.release(kryo2);
+		pool.release(kryo3);
+		assertEquals(2, pool.getIdleCount());
+		assertSame(kryo1, pool.borrow());
+		assertSame(kryo2, pool.borrow());
+		assertEquals(0, pool.getIdleCount());
+	}
+
+	public void testRunReleasesOnException () {
+		KryoPool pool = new KryoPool(factory);
+		try {
+			pool.run(new KryoCallback() {
+				public Object execute (Kryo kryo) {
+					throw new KryoException("expected");
+				}
+			});
+			fail();
+		} catch (KryoException expected) {
+		}
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	public void testConcurrentUse () throws Exception {
+		final KryoPool pool = new KryoPool(factory);
+		final ArrayList list = list("one", 2, 3L, "four");
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run () {
+					for (int i = 0; i < 200; i++) {
+						Object copy = pool.run(new KryoCallback() {
+							public Object execute (Kryo kryo) {
+								Output output = new Output(256);
+								kryo.writeClassAndObject(output, list);
+								return kryo.readClassAndObject(new Input(output.toBytes()));
+							}
+						});
+						if (!list.equals(copy)) failures.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		assertEquals(0, failures.get());
+		assertTrue(created.get() <= threads.length);
+	}
+}
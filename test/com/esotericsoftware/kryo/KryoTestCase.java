@@ -74,6 +74,15 @@ abstract public class KryoTestCase extends TestCase {
 		return (T)object2;
 	}
 
+	/** Writes the object and its class, sets {@link #input} to read them back and returns the bytes written. */
+	public byte[] write (Object object) {
+		output = new Output(1024, -1);
+		kryo.writeClassAndObject(output, object);
+		byte[] bytes = output.toBytes();
+		input = new Input(bytes);
+		return bytes;
+	}
+
 	static public void assertEquals (Object object1, Object object2) {
 		Assert.assertEquals(arrayToList(object1), arrayToList(object2));
 	}
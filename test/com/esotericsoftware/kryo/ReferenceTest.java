@@ -0,0 +1,192 @@
+package com.esotericsoftware.kryo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.CollectionSerializer;
+import com.esotericsoftware.kryo.util.IdentityObjectIntMap;
+import com.esotericsoftware.kryo.util.IntMap;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
+
+public class ReferenceTest extends KryoTestCase {
+	protected void setUp () throws Exception {
+		super.setUp();
+		kryo.setReferences(true);
+		kryo.register(ArrayList.class);
+		kryo.register(Node.class);
+		kryo.register(HashMap.class);
+	}
+
+	public void testManyReferences () {
+		ArrayList list = new ArrayList();
+		ArrayList<Node> nodes = new ArrayList();
+		for (int i = 0; i < 100; i++) {
+			Node node = new Node();
+			node.value = i;
+			nodes.add(node);
+			list.add(node);
+		}
+		for (int i = 0; i < 100; i++) {
+			nodes.get(i).next = nodes.get((i + 1) % 100);
+			list.add(nodes.get(99 - i));
+		}
+
+		Output output = new Output(4096);
+		kryo.writeClassAndObject(output, list);
+		ArrayList copy = (ArrayList)kryo.readClassAndObject(new Input(output.toBytes()));
+		assertEquals(200, copy.size());
+		for (int i = 0; i < 100; i++) {
+			Node node = (Node)copy.get(i);
+			assertEquals(i, node.value);
+			assertSame(copy.get((i + 1) % 100), node.next);
+			assertSame(node, copy.get(199 - i));
+		}
+
+		// IDs must not leak into the next object graph.
+		output.clear();
+		kryo.writeClassAndObject(output, list);
+		ArrayList copy2 = (ArrayList)kryo.readClassAndObject(new Input(output.toBytes()));
+		assertNotSame(copy.get(0), copy2.get(0));
+		assertSame(copy2.get(0), copy2.get(199));
+	}
+
+	public void testReferenceResolver () {
+		final int[] resets = new int[1];
+		kryo.setReferenceResolver(new MapReferenceResolver() {
+			public void reset () {
+				super.reset();
+				resets[0]++;
+			}
+		});
+		Node node = new Node();
+		node.next = node;
+		Output output = new Output(256);
+		kryo.writeClassAndObject(output, node);
+		Node copy = (Node)kryo.readClassAndObject(new Input(output.toBytes()));
+		assertSame(copy, copy.next);
+		assertEquals(2, resets[0]);
+	}
+
+	public void testImmutableTypes () {
+		assertFalse(kryo.getRegistration(Integer.class).getReferences());
+		assertFalse(kryo.getRegistration(String.class).getReferences());
+		assertTrue(kryo.getRegistration(Node.class).getReferences());
+
+		HashMap map = new HashMap();
+		for (int i = 0; i < 100; i++)
+			map.put("key" + i, i * 1000);
+		int withoutReferences = write(map).length;
+		assertEquals(map, kryo.readClassAndObject(input));
+
+		kryo.getRegistration(String.class).setReferences(true);
+		kryo.getRegistration(int.class).setReferences(true);
+		int withReferences = write(map).length;
+		assertEquals(map, kryo.readClassAndObject(input));
+		// One reference ID is saved per key and per value.
+		assertEquals(200, withReferences - withoutReferences);
+	}
+
+	public void testUnregisteredType () {
+		// Checking references for a type that is not registered must not require a registration.
+		LinkedList list = new LinkedList();
+		list.add(5);
+		Output output = new Output(256);
+		kryo.writeObject(output, list, new CollectionSerializer(kryo));
+		CollectionSerializer serializer = new CollectionSerializer(kryo) {
+			public Collection create (Kryo kryo, Input input, Class<Collection> type) {
+				return new LinkedList();
+			}
+		};
+		assertEquals(list, kryo.readObject(new Input(output.toBytes()), LinkedList.class, serializer));
+	}
+
+	public void testInvalidReadId () {
+		MapReferenceResolver resolver = new MapReferenceResolver();
+		resolver.addReadObject(Node.class, 1, new Node());
+		resolver.addReadObject(Node.class, 2, new Node());
+		int[] ids = {0, -1, 4, Integer.MAX_VALUE};
+		for (int i = 0; i < ids.length; i++) {
+			try {
+				resolver.addReadObject(Node.class, ids[i], new Node());
+				fail();
+			} catch (KryoException expected) {
+			}
+		}
+		assertNull(resolver.getReadObject(Node.class, -1));
+		resolver.addReadObject(Node.class, 3, new Node());
+	}
+
+	public void testClear () {
+		IdentityObjectIntMap<Object> objects = new IdentityObjectIntMap();
+		IntMap<Object> ints = new IntMap();
+		Object[] keys = new Object[100];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = new Object();
+		for (int generation = 0; generation < 3; generation++) {
+			for (int i = 0; i < keys.length; i++) {
+				assertEquals(-1, objects.get(keys[i], -1));
+				assertNull(ints.get(i));
+				objects.put(keys[i], i);
+				ints.put(i, keys[i]);
+			}
+			assertEquals(keys.length, objects.size);
+			assertEquals(keys.length, ints.size);
+			for (int i = 0; i < keys.length; i++) {
+				assertEquals(i, objects.get(keys[i], -1));
+				assertSame(keys[i], ints.get(i));
+			}
+			objects.clear();
+			ints.clear();
+			assertEquals(0, objects.size);
+			assertFalse(ints.containsValue(keys[1], true));
+		}
+		objects.put(keys[0], 0);
+		objects.clear(16);
+		assertEquals(-1, objects.get(keys[0], -1));
+
+		// Reusing buckets after removing entries fills more buckets than the capacity.
+		for (int i = 0; i < 1000; i++) {
+			objects.put(keys[i % 10], i);
+			ints.put(i % 10 + 1, keys[i % 10]);
+			objects.remove(keys[i % 10], -1);
+			ints.remove(i % 10 + 1);
+		}
+		objects.put(keys[1], 1);
+		ints.put(2, keys[1]);
+		objects.clear();
+		ints.clear();
+		assertEquals(-1, objects.get(keys[1], -1));
+		assertNull(ints.get(2));
+		assertFalse(ints.containsValue(keys[1], true));
+	}
+
+	public void testLargeGraph () {
+		ArrayList<Node> list = new ArrayList();
+		for (int i = 0; i < 3000; i++) {
+			Node node = new Node();
+			node.value = i;
+			node.next = node;
+			list.add(node);
+		}
+		write(list);
+		ArrayList<Node> copy = (ArrayList)kryo.readClassAndObject(input);
+		assertEquals(3000, copy.size());
+		assertSame(copy.get(2999), copy.get(2999).next);
+
+		// Storage retained after the large graph must not affect the next graph.
+		Node node = new Node();
+		node.next = node;
+		write(node);
+		Node nodeCopy = (Node)kryo.readClassAndObject(input);
+		assertSame(nodeCopy, nodeCopy.next);
+	}
+
+	static public class Node {
+		public int value;
+		public Node next;
+	}
+}
@@ -0,0 +1,287 @@
+package com.esotericsoftware.kryo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.CollectionSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.StringBuilderSerializer;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+
+public class RegistrationTest extends KryoTestCase {
+	public void testRegistrationIDs () {
+		kryo.register(ArrayList.class, 20);
+		kryo.register(HashMap.class, 100000);
+		kryo.register(StringBuilder.class, new StringBuilderSerializer(), 4000);
+
+		assertEquals(ArrayList.class, kryo.getRegistration(20).getType());
+		assertEquals(HashMap.class, kryo.getRegistration(100000).getType());
+		assertEquals(StringBuilder.class, kryo.getRegistration(4000).getType());
+		assertNull(kryo.getRegistration(21));
+		assertNull(kryo.getRegistration(3000));
+		assertNull(kryo.getRegistration(100001));
+
+		HashMap map = new HashMap();
+		map.put("a", list(new StringBuilder("b"), 1, "c"));
+		Output output = new Output(256);
+		kryo.writeClassAndObject(output, map);
+		Object copy = kryo.readClassAndObject(new Input(output.toBytes()));
+		assertEquals(map.toString(), copy.toString());
+	}
+
+	public void testDefaultSerializerCache () {
+		assertEquals(CollectionSerializer.class, kryo.getDefaultSerializer(ArrayList.class).getClass());
+		assertEquals(FieldSerializer.class, kryo.getDefaultSerializer(Object.class).getClass());
+		assertNotSame(kryo.getDefaultSerializer(Object.class), kryo.getDefaultSerializer(Object.class));
+
+		// Adding a default serializer must invalidate types resolved earlier.
+		kryo.addDefaultSerializer(ArrayList.class, JavaSerializer.class);
+		assertEquals(JavaSerializer.class, kryo.getDefaultSerializer(ArrayList.class).getClass());
+		assertEquals(CollectionSerializer.class, kryo.getDefaultSerializer(LinkedList.class).getClass());
+
+		kryo.setDefaultSerializer((Class)JavaSerializer.class);
+		assertEquals(JavaSerializer.class, kryo.getDefaultSerializer(Object.class).getClass());
+
+		// Kryo instances using a registry share its cache until they change their own default serializers.
+		Kryo kryo1 = new Kryo(kryo), kryo2 = new Kryo(kryo);
+		assertEquals(JavaSerializer.class, kryo1.getDefaultSerializer(TestClass.class).getClass());
+		kryo1.addDefaultSerializer(TestClass.class, FieldSerializer.class);
+		assertEquals(FieldSerializer.class, kryo1.getDefaultSerializer(TestClass.class).getClass());
+		assertEquals(JavaSerializer.class, kryo2.getDefaultSerializer(TestClass.class).getClass());
+		assertEquals(JavaSerializer.class, kryo.getDefaultSerializer(TestClass.class).getClass());
+		assertEquals(CollectionSerializer.class, kryo1.getDefaultSerializer(LinkedList.class).getClass());
+	}
+
+	public void testSession () {
+		kryo.setRegistrationRequired(false);
+		ArrayList list = list("session string", new TestClass(), "session string", 4);
+
+		// Without a session, the class names and strings are written again for each object graph.
+		int first = write(list).length, second = write(list).length;
+		assertEquals(first, second);
+
+		kryo.setSession(true);
+		kryo.setSessionStrings(true);
+		Output output = new Output(1024);
+		kryo.writeClassAndObject(output, list);
+		int sessionFirst = output.position();
+		kryo.writeClassAndObject(output, list);
+		kryo.writeClassAndObject(output, list("session string", null));
+		int sessionSecond = output.position() - sessionFirst;
+		assertTrue(sessionFirst < first);
+		assertTrue(sessionSecond < first);
+
+		Kryo reader = new Kryo();
+		reader.setReferences(false);
+		reader.setSession(true);
+		reader.setSessionStrings(true);
+		Input input = new Input(output.toBytes());
+		assertEquals(list, reader.readClassAndObject(input));
+		assertEquals(list, reader.readClassAndObject(input));
+		assertEquals(list("session string", null), reader.readClassAndObject(input));
+
+		// A string ID that was not stored in this session is an error.
+		int[] badIds = {10, -1};
+		for (int i = 0; i < badIds.length; i++) {
+			Output badOutput = new Output(16);
+			badOutput.writeInt(badIds[i], true);
+			try {
+				reader.readSessionString(new Input(badOutput.toBytes()));
+				fail();
+			} catch (KryoException expected) {
+			}
+		}
+
+		// A stream cannot store more or longer strings than the writer would.
+		Output longOutput = new Output(1024);
+		longOutput.writeByte(2);
+		longOutput.writeString(new String(new char[Kryo.MAX_SESSION_STRING_LENGTH + 1]).replace('\0', 'a'));
+		try {
+			reader.readSessionString(new Input(longOutput.toBytes()));
+			fail();
+		} catch (KryoException expected) {
+		}
+		Output manyOutput = new Output(1024, -1);
+		for (int i = 0; i <= Kryo.MAX_SESSION_STRINGS; i++) {
+			manyOutput.writeByte(2);
+			manyOutput.writeString("s" + i);
+		}
+		Input manyInput = new Input(manyOutput.toBytes());
+		reader.resetSession();
+		for (int i = 0; i < Kryo.MAX_SESSION_STRINGS; i++)
+			assertEquals("s" + i, reader.readSessionString(manyInput));
+		try {
+			reader.readSessionString(manyInput);
+			fail();
+		} catch (KryoException expected) {
+		}
+
+		// After a reset, names and strings must be written again.
+		kryo.resetSession();
+		assertEquals(sessionFirst, write(list).length);
+	}
+
+	public void testClassNameCache () {
+		kryo.setRegistrationRequired(false);
+		Output output = new Output(1024);
+		kryo.writeClassAndObject(output, new TestClass());
+		byte[] bytes = output.toBytes();
+
+		final int[] lookups = new int[1];
+		Kryo reader = new Kryo();
+		reader.setReferences(false);
+		reader.setClassLoader(new ClassLoader(getClass().getClassLoader()) {
+			protected Class loadClass (String name, boolean resolve) throws ClassNotFoundException {
+				if (name.equals(TestClass.class.getName())) {
+					lookups[0]++;
+					throw new ClassNotFoundException(name);
+				}
+				return super.loadClass(name, resolve);
+			}
+		});
+		for (int i = 0; i < 3; i++) {
+			try {
+				reader.readClassAndObject(new Input(bytes));
+				fail();
+			} catch (KryoException expected) {
+				assertTrue(expected.getCause() instanceof ClassNotFoundException);
+			}
+		}
+		// Failed lookups are cached across object graphs.
+		assertEquals(1, lookups[0]);
+
+		// Changing the classloader discards the cache.
+		reader.setClassLoader(getClass().getClassLoader());
+		assertEquals(new TestClass(), reader.readClassAndObject(new Input(bytes)));
+		assertEquals(new TestClass(), reader.readClassAndObject(new Input(bytes)));
+	}
+
+	public void testRegistry () {
+		kryo.register(ArrayList.class);
+		kryo.register(TestClass.class);
+
+		Kryo kryo1 = new Kryo(kryo), kryo2 = new Kryo(kryo);
+		assertSame(kryo.getSerializer(TestClass.class), kryo1.getSerializer(TestClass.class));
+		assertSame(kryo.getRegistration(TestClass.class), kryo2.getRegistration(TestClass.class));
+
+		ArrayList list = list(new TestClass(), "abc", 5);
+		Output output = new Output(1024);
+		kryo1.writeClassAndObject(output, list);
+		assertEquals(list, kryo2.readClassAndObject(new Input(output.toBytes())));
+
+		// Registering with an instance using the registry does not affect the registry.
+		kryo1.register(HashMap.class);
+		assertNotNull(kryo1.getRegistration(HashMap.class));
+		try {
+			kryo2.getRegistration(HashMap.class);
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+		kryo2.register(TestClass.class, new JavaSerializer());
+		assertEquals(JavaSerializer.class, kryo2.getSerializer(TestClass.class).getClass());
+		assertEquals(FieldSerializer.class, kryo.getSerializer(TestClass.class).getClass());
+		assertEquals(kryo.getRegistration(TestClass.class).getId(), kryo2.getRegistration(TestClass.class).getId());
+
+		// The registry is frozen.
+		try {
+			kryo.register(HashMap.class);
+			fail();
+		} catch (KryoException expected) {
+		}
+	}
+
+	public void testRegistrySerializersPerKryo () {
+		kryo.register(Holder.class);
+		kryo.register(Value.class);
+		Kryo kryo1 = new Kryo(kryo), kryo2 = new Kryo(kryo);
+
+		final int[] writes = new int[1];
+		Serializer intSerializer = new Serializer<Integer>() {
+			public void write (Kryo kryo, Output output, Integer object) {
+				writes[0]++;
+				output.writeInt(object);
+			}
+
+			public Integer create (Kryo kryo, Input input, Class<Integer> type) {
+				return input.readInt();
+			}
+		};
+		Serializer valueSerializer = new Serializer<Value>() {
+			public void write (Kryo kryo, Output output, Value object) {
+				writes[0]++;
+				output.writeString(object.text);
+			}
+
+			public Value create (Kryo kryo, Input input, Class<Value> type) {
+				Value value = new Value();
+				value.text = input.readString();
+				return value;
+			}
+		};
+
+		Holder holder = new Holder();
+		holder.number = 5;
+		holder.value = new Value();
+		holder.value.text = "abc";
+		int length = roundTrip(kryo1, holder);
+
+		// Serializers registered with one Kryo are used for the fields of objects whose serializer is shared from the registry.
+		kryo2.register(int.class, intSerializer);
+		kryo2.register(Value.class, valueSerializer);
+		roundTrip(kryo2, holder);
+		assertEquals(2, writes[0]);
+
+		// They don't leak to the registry or to other Kryo instances using it.
+		assertEquals(length, roundTrip(kryo1, holder));
+		assertEquals(length, roundTrip(kryo, holder));
+		assertEquals(length, roundTrip(new Kryo(kryo), holder));
+		assertEquals(2, writes[0]);
+
+		// Registrations of the registry cannot be modified.
+		try {
+			kryo.getRegistration(Value.class).setSerializer(valueSerializer);
+			fail();
+		} catch (KryoException expected) {
+		}
+		try {
+			kryo1.getRegistration(Holder.class).setReferences(false);
+			fail();
+		} catch (KryoException expected) {
+		}
+	}
+
+	private int roundTrip (Kryo kryo, Object object) {
+		Output output = new Output(1024);
+		kryo.writeClassAndObject(output, object);
+		assertEquals(object, kryo.readClassAndObject(new Input(output.toBytes())));
+		return output.position();
+	}
+
+	static public class Holder {
+		public int number;
+		public Value value;
+
+		public boolean equals (Object obj) {
+			return obj instanceof Holder && number == ((Holder)obj).number && value.equals(((Holder)obj).value);
+		}
+	}
+
+	static public final class Value {
+		public String text;
+
+		public boolean equals (Object obj) {
+			return obj instanceof Value && text.equals(((Value)obj).text);
+		}
+	}
+
+	static public class TestClass {
+		public String value = "session string";
+
+		public boolean equals (Object obj) {
+			return obj instanceof TestClass && value.equals(((TestClass)obj).value);
+		}
+	}
+}